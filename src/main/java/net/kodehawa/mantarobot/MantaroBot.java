@@ -32,9 +32,11 @@ import net.kodehawa.mantarobot.commands.moderation.MuteTask;
 import net.kodehawa.mantarobot.commands.music.MantaroAudioManager;
 import net.kodehawa.mantarobot.commands.utils.birthday.BirthdayCacher;
 import net.kodehawa.mantarobot.commands.utils.birthday.BirthdayTask;
+import net.kodehawa.mantarobot.commands.utils.premium.PremiumRenewalTask;
 import net.kodehawa.mantarobot.commands.utils.reminders.ReminderTask;
 import net.kodehawa.mantarobot.core.MantaroCore;
 import net.kodehawa.mantarobot.core.MantaroEventManager;
+import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.log.LogFilter;
@@ -178,7 +180,9 @@ public class MantaroBot {
                 players.getValue().getLavaLink().destroy();
             }
 
-            log.info("Destroyed all players. Not aware of anything holding off shutdown now");
+            log.info("Destroyed all players. Saving chat experience...");
+            CommandListener.getExperienceAccumulator().flush();
+            log.info("Not aware of anything holding off shutdown now");
         }));
     }
 
@@ -261,6 +265,12 @@ public class MantaroBot {
                     new ThreadFactoryBuilder().setNameFormat("Mantaro Reminder Handler").build()
             );
             reminderExecutor.scheduleAtFixedRate(ReminderTask::handle, 0, 30, TimeUnit.SECONDS);
+
+            // Handle premium key renewals and expiration warnings. Keys aren't per-node, so only the master node does this.
+            ScheduledExecutorService premiumExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Mantaro Premium Renewal Task").build()
+            );
+            premiumExecutor.scheduleAtFixedRate(PremiumRenewalTask::handle, 5, 360, TimeUnit.MINUTES);
         }
 
         // Handle the removal of mutes.
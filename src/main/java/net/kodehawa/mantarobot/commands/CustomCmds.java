@@ -42,8 +42,8 @@ import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
 import net.kodehawa.mantarobot.db.entities.helpers.CustomCommandData;
-import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.utils.StringUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.DiscordUtils;
@@ -56,7 +56,6 @@ import org.slf4j.LoggerFactory;
 
 import java.security.SecureRandom;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
@@ -71,35 +70,24 @@ public class CustomCmds {
                                 INVALID_CHARACTERS_PATTERN = Pattern.compile("[^a-zA-Z0-9_]"),
                                 NAME_WILDCARD_PATTERN = Pattern.compile("[a-zA-Z0-9_*]+");
 
-    private static final Map<String, CustomCommand> customCommands = new ConcurrentHashMap<>();
     private static final Logger log = LoggerFactory.getLogger(CustomCmds.class);
     private static final SecureRandom random = new SecureRandom();
 
-    public static void handle(String prefix, String cmdName, Context ctx, GuildData guildData, String args) {
+    public static void handle(String prefix, String cmdName, Context ctx, GuildCommandConfig guildConfig, String args) {
         CustomCommand customCommand = getCustomCommand(ctx.getGuild().getId(), cmdName);
         if (customCommand == null) {
             return;
         }
 
         // !! CCS disable check start.
-        if (guildData.getDisabledCommands().contains(cmdName)) {
-            return;
-        }
-
-        List<String> channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(ctx.getChannel().getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(cmdName)) {
-            return;
-        }
-
-        HashMap<String, List<String>> roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (ctx.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(r.getId(), s -> new ArrayList<>()).contains(cmdName)) && !CommandPermission.ADMIN.test(ctx.getMember())) {
+        if (guildConfig.getPolicy().isCustomCommandDisabled(ctx.getMember(), ctx.getChannel().getIdLong(), cmdName)) {
             return;
         }
         // !! CCS disable check end.
 
         // Create a new language context only if the command goes through.
         // This avoids getting a user everytime a command is ran, even if the command is not valid.
-        ctx.setLanguageContext(new I18nContext(guildData, db().getUser(ctx.getAuthor()).getData()));
+        ctx.setLanguageContext(new I18nContext(guildConfig.getLang(), db().getUser(ctx.getAuthor()).getData()));
 
         // Run the actual custom command.
         List<String> values = customCommand.getValues();
@@ -128,18 +116,16 @@ public class CustomCmds {
 
     }
 
-    //Lazy-load custom commands into cache.
+    // Custom commands come from a per-guild cache (see ManagedDatabase#getCachedCustomCommand), which also knows which names
+    // aren't custom commands, so a message that isn't one is answered without going to the database.
+    // Saving or deleting one drops its guild from the cache, on every node.
     public static CustomCommand getCustomCommand(String id, String name) {
         //lol
         if (CommandProcessor.REGISTRY.commands().containsKey(name)) {
             return null;
         }
 
-        if (customCommands.containsKey(id + ":" + name)) {
-            return customCommands.get(id + ":" + name);
-        }
-
-        CustomCommand custom = db().getCustomCommand(id, name);
+        CustomCommand custom = db().getCachedCustomCommand(id, name);
         if (custom == null)
             return null;
 
@@ -158,9 +144,6 @@ public class CustomCmds {
             custom.save();
         }
 
-        //add to registry
-        customCommands.put(custom.getId(), custom);
-
         return custom;
     }
 
@@ -220,9 +203,9 @@ public class CustomCmds {
 
             @Override
             protected void call(Context ctx, I18nContext languageContext, String content) {
-                List<String> commands = ctx.db().getCustomCommands(ctx.getGuild())
+                List<String> commands = ctx.db().getCustomCommandNames(ctx.getGuild().getId())
                         .stream()
-                        .map(CustomCommand::getName)
+                        .sorted()
                         .collect(Collectors.toList());
 
                 String description = languageContext.get("general.dust");
@@ -356,7 +339,6 @@ public class CustomCmds {
 
                 int size = customCommands.size();
                 customCommands.stream().filter(cmd -> !cmd.getData().isLocked()).forEach(CustomCommand::deleteAsync);
-                customCommands.forEach(c -> CustomCmds.customCommands.remove(c.getId()));
                 ctx.sendLocalized("commands.custom.clear.success", EmoteReference.PENCIL, size);
             }
         }).createSubCommandAlias("clear", "clr");
@@ -434,17 +416,9 @@ public class CustomCmds {
                     return;
                 }
 
-                //delete at DB
+                //delete at DB (the cache picks it up from there)
                 custom.deleteAsync();
 
-                //reflect at local
-                customCommands.remove(custom.getId());
-
-                //clear commands if none
-                if (customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + content))) {
-                    customCommands.remove(content);
-                }
-
                 ctx.sendLocalized("commands.custom.remove.success", EmoteReference.PENCIL, content);
             }
         }).createSubCommandAlias("remove", "rm");
@@ -504,9 +478,6 @@ public class CustomCmds {
                             //save at DB
                             custom.saveAsync();
 
-                            //reflect at local
-                            customCommands.put(custom.getId(), custom);
-
                             ctx.sendLocalized("commands.custom.import.success", custom.getName(), pair.getKey().getName(), custom.getValues().size());
                             //easter egg :D
                             TextChannelGround.of(ctx.getEvent()).dropItemWithChance(8, 2);
@@ -622,7 +593,6 @@ public class CustomCmds {
                 custom.getValues().set(where - 1, commandContent);
 
                 custom.saveAsync();
-                customCommands.put(custom.getId(), custom);
 
                 ctx.sendLocalized("commands.custom.edit.success", EmoteReference.CORRECT, where, custom.getName());
             }
@@ -686,7 +656,6 @@ public class CustomCmds {
                 }
 
                 custom.saveAsync();
-                customCommands.put(custom.getId(), custom);
 
                 ctx.sendLocalized("commands.custom.deleteresponse.success", EmoteReference.CORRECT, where, custom.getName());
             }
@@ -814,14 +783,6 @@ public class CustomCmds {
                 oldCustom.deleteAsync();
                 newCustom.saveAsync();
 
-                //reflect at local
-                customCommands.remove(oldCustom.getId());
-                customCommands.put(newCustom.getId(), newCustom);
-
-                //clear commands if none
-                if (customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + cmd)))
-                    customCommands.remove(cmd);
-
                 ctx.sendLocalized("commands.custom.rename.success", EmoteReference.CORRECT, cmd, value);
 
                 //easter egg :D
@@ -928,8 +889,6 @@ public class CustomCmds {
 
                 //save at DB
                 custom.saveAsync();
-                //reflect at local
-                customCommands.put(custom.getId(), custom);
 
                 ctx.sendLocalized("commands.custom.add.success", EmoteReference.CORRECT, cmd);
 
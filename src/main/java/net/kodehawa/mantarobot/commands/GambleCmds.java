@@ -30,6 +30,7 @@ import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.core.modules.commands.help.HelpContent;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
@@ -40,6 +41,7 @@ import java.text.ParseException;
 import java.text.ParsePosition;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -203,7 +205,6 @@ public class GambleCmds {
                 var coinAmount = 1;
 
                 var player = ctx.getPlayer();
-                var stats = ctx.db().getPlayerStats(ctx.getAuthor());
 
                 SeasonPlayer seasonalPlayer = null; //yes
                 var season = false;
@@ -354,8 +355,7 @@ public class GambleCmds {
                                     .formatted(gains, money))
                             .append(EmoteReference.POPPER);
 
-                    stats.incrementSlotsWins();
-                    stats.addSlotsWin(gains);
+                    ctx.db().increment(PlayerStats.of(ctx.getAuthor()), Map.of("slotsWins", 1L, "slotsWinAmount", gains));
 
                     if ((gains + money) > SLOTS_MAX_MONEY) {
                         player.getData().addBadgeIfAbsent(Badge.LUCKY_SEVEN);
@@ -373,14 +373,12 @@ public class GambleCmds {
                         player.saveUpdating();
                     }
                 } else {
-                    stats.getData().incrementSlotsLose();
+                    ctx.db().increment(PlayerStats.of(ctx.getAuthor()), "data.slotsLose", 1L);
                     message.append(toSend).append("\n\n").append(
                             languageContext.withRoot("commands", "slots.lose").formatted(EmoteReference.SAD)
                     );
                 }
 
-                stats.saveUpdating();
-
                 message.append("\n");
                 ctx.send(message.toString());
             }
@@ -403,7 +401,7 @@ public class GambleCmds {
     }
 
     private void proceedGamble(Context ctx, Player player, int luck, long i, long gains, long bet) {
-        var stats = MantaroData.db().getPlayerStats(ctx.getMember());
+        var db = MantaroData.db();
         var data = player.getData();
         final SecureRandom random = new SecureRandom();
 
@@ -415,8 +413,7 @@ public class GambleCmds {
                     }
                 }
 
-                stats.incrementGambleWins();
-                stats.addGambleWin(gains);
+                db.increment(PlayerStats.of(player.getUserId()), Map.of("gambleWins", 1L, "gambleWinAmount", gains));
 
                 ctx.sendLocalized("commands.gamble.win", EmoteReference.DICE, gains);
             } else {
@@ -430,7 +427,7 @@ public class GambleCmds {
             var oldMoney = player.getCurrentMoney();
             player.setCurrentMoney(Math.max(0, player.getCurrentMoney() - i));
 
-            stats.getData().incrementGambleLose();
+            db.increment(PlayerStats.of(player.getUserId()), "data.gambleLose", 1L);
             ctx.sendLocalized("commands.gamble.lose", EmoteReference.DICE,
                     (player.getCurrentMoney() == 0 ? ctx.getLanguageContext().get("commands.gamble.lose_all") + " " + oldMoney : i),
                     EmoteReference.SAD
@@ -439,6 +436,5 @@ public class GambleCmds {
 
         player.setLocked(false);
         player.saveUpdating();
-        stats.saveUpdating();
     }
 }
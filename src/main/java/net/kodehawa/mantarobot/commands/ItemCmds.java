@@ -255,9 +255,7 @@ public class ItemCmds {
                             player.save();
                         }
 
-                        PlayerStats stats = ctx.getPlayerStats();
-                        stats.incrementCraftedItems(amountSpecified);
-                        stats.saveUpdating();
+                        ctx.db().increment(PlayerStats.of(ctx.getAuthor()), "craftedItems", amountSpecified);
 
                         ItemHelper.handleItemDurability(wrenchItem, ctx, player, user, seasonalPlayer, "commands.cast.autoequip.success", isSeasonal);
                         ctx.sendFormat(ctx.getLanguageContext().get("commands.cast.success") + "\n" + message,
@@ -496,9 +494,7 @@ public class ItemCmds {
                             player.save();
                         }
 
-                        var stats = ctx.getPlayerStats();
-                        stats.incrementRepairedItems();
-                        stats.saveUpdating();
+                        ctx.db().increment(PlayerStats.of(ctx.getAuthor()), "repairedItems", 1L);
 
                         ItemHelper.handleItemDurability(wrenchItem, ctx, player, user, seasonalPlayer, "commands.cast.autoequip.success", isSeasonal);
 
@@ -689,9 +685,7 @@ public class ItemCmds {
                             player.save();
                         }
 
-                        var stats = ctx.getPlayerStats();
-                        stats.incrementSalvagedItems();
-                        stats.saveUpdating();
+                        ctx.db().increment(PlayerStats.of(ctx.getAuthor()), "salvagedItems", 1L);
 
                         ItemHelper.handleItemDurability(wrenchItem, ctx, player, user, seasonalPlayer, "commands.cast.autoequip.success", isSeasonal);
                         ctx.sendLocalized("commands.salvage.success", wrenchItem.getEmojiDisplay(), item.getName(), toReturn.getName(), salvageCost);
@@ -20,7 +20,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.eventbus.Subscribe;
 import com.rethinkdb.gen.ast.ReqlFunction1;
 import com.rethinkdb.model.OptArgs;
-import com.rethinkdb.net.Connection;
 import com.rethinkdb.utils.Types;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
@@ -36,7 +35,7 @@ import net.kodehawa.mantarobot.core.modules.commands.help.HelpContent;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.db.ConnectionPool;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
@@ -57,7 +56,6 @@ import static com.rethinkdb.RethinkDB.r;
 @Module
 public class LeaderboardCmd {
     private final Config config = MantaroData.config().get();
-    private final Connection leaderboardConnection = Utils.newDbConnection();
 
     @Subscribe
     public void richest(CommandRegistry cr) {
@@ -410,21 +408,23 @@ public class LeaderboardCmd {
     }
 
     private List<Map<String, Object>> getLeaderboard(String table, String index, ReqlFunction1 filterFunction, ReqlFunction1 mapFunction) {
-        return r.table(table)
-                .orderBy()
-                .optArg("index", r.desc(index))
-                .filter(filterFunction)
-                .limit(10)
-                .map(mapFunction)
-                .run(leaderboardConnection,
-                        // This basically just means read from the available data
-                        // Instead of trying to get the latest data available.
-                        // For the purpose of leaderboards, this is actually pretty useful
-                        // and lead to quite a few improvements in query times.
-                        OptArgs.of("read_mode", "outdated"),
-                        Types.mapOf(String.class, Object.class)
-                )
-                .toList();
+        try (var lease = MantaroData.pool().acquire(ConnectionPool.Lane.BULK)) {
+            return r.table(table)
+                    .orderBy()
+                    .optArg("index", r.desc(index))
+                    .filter(filterFunction)
+                    .limit(10)
+                    .map(mapFunction)
+                    .run(lease.connection(),
+                            // This basically just means read from the available data
+                            // Instead of trying to get the latest data available.
+                            // For the purpose of leaderboards, this is actually pretty useful
+                            // and lead to quite a few improvements in query times.
+                            OptArgs.of("read_mode", "outdated"),
+                            Types.mapOf(String.class, Object.class)
+                    )
+                    .toList();
+        }
     }
 
     private EmbedBuilder generateLeaderboardEmbed(Context ctx, String description, String leaderboardKey,
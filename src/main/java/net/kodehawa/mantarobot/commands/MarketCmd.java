@@ -552,20 +552,32 @@ public class MarketCmd {
 
             var many = itemNumber * -1;
             var amount = Math.round((toSell.getValue() * 0.9)) * Math.abs(many);
-            playerInventory.process(new ItemStack(toSell, many));
-
             if (isSeasonal) {
+                playerInventory.process(new ItemStack(toSell, many));
                 seasonalPlayer.addMoney(amount);
+                player.getData().setMarketUsed(player.getData().getMarketUsed() + 1);
+                player.save();
+                seasonalPlayer.saveAsync();
             } else {
-                player.addMoney(amount);
+                var sold = ctx.db().modifyPlayer(ctx.getAuthor().getId(), latest -> {
+                    // Could've been sold or used up by another command in the meantime.
+                    if (latest.getInventory().getAmount(toSell) < Math.abs(many)) {
+                        return false;
+                    }
+
+                    latest.getInventory().process(new ItemStack(toSell, many));
+                    latest.addMoney(amount);
+                    latest.getData().setMarketUsed(latest.getData().getMarketUsed() + 1);
+                    return true;
+                });
+
+                if (sold == null) {
+                    ctx.sendLocalized("commands.market.sell.more_items_than_player", warn + EmoteReference.ERROR);
+                    return;
+                }
             }
 
-            player.getData().setMarketUsed(player.getData().getMarketUsed() + 1);
             ctx.sendLocalized("commands.market.sell.success", warn + EmoteReference.CORRECT, Math.abs(many), toSell.getName(), amount);
-            player.save();
-
-            if (isSeasonal)
-                seasonalPlayer.saveAsync();
         } catch (Exception e) {
             ctx.send(warn + EmoteReference.ERROR + languageContext.get("general.invalid_syntax"));
         }
@@ -651,38 +663,64 @@ public class MarketCmd {
             }
 
             var value = itemToBuy.getValue() * itemNumber;
-            var removedMoney = isSeasonal ? seasonalPlayer.removeMoney(value) : player.removeMoney(value);
-            if (removedMoney) {
-                playerInventory.process(new ItemStack(itemToBuy, itemNumber));
+            var amount = itemNumber;
+            long playerMoney;
+            if (isSeasonal) {
+                if (!seasonalPlayer.removeMoney(value)) {
+                    ctx.sendLocalized("commands.market.buy.not_enough_money", warn + EmoteReference.STOP, player.getCurrentMoney(), value);
+                    return;
+                }
+
+                playerInventory.process(new ItemStack(itemToBuy, amount));
                 player.getData().addBadgeIfAbsent(Badge.BUYER);
                 player.getData().setMarketUsed(player.getData().getMarketUsed() + 1);
 
                 //Due to player data being updated here too.
                 player.saveAsync();
+                seasonalPlayer.saveAsync();
+                playerMoney = seasonalPlayer.getMoney();
+            } else {
+                // Checked again on the latest player: something else could've spent the money since we loaded it.
+                var updated = ctx.db().modifyPlayer(ctx.getAuthor().getId(), latest -> {
+                    if (latest.getInventory().getAmount(itemToBuy) + amount > 5000 || !latest.removeMoney(value)) {
+                        return false;
+                    }
 
-                if (isSeasonal) {
-                    seasonalPlayer.saveAsync();
-                }
+                    latest.getInventory().process(new ItemStack(itemToBuy, amount));
+                    latest.getData().addBadgeIfAbsent(Badge.BUYER);
+                    latest.getData().setMarketUsed(latest.getData().getMarketUsed() + 1);
+                    return true;
+                });
 
-                var playerMoney = isSeasonal ? seasonalPlayer.getMoney() : player.getCurrentMoney();
-                var message = "commands.market.buy.success";
-                if (itemToBuy instanceof Breakable) {
-                    message = "commands.market.buy.success_breakable";
-                }
+                if (updated == null) {
+                    var latest = ctx.getPlayer();
+                    if (latest.getInventory().getAmount(itemToBuy) + amount > 5000) {
+                        ctx.sendLocalized("commands.market.buy.item_limit_reached", warn + EmoteReference.ERROR);
+                    } else {
+                        ctx.sendLocalized("commands.market.buy.not_enough_money", warn + EmoteReference.STOP, latest.getCurrentMoney(), value);
+                    }
 
-                if (itemToBuy instanceof Potion) {
-                    message = "commands.market.buy.success_potion";
+                    return;
                 }
 
-                if (itemToBuy instanceof Attribute && !(itemToBuy instanceof Wrench) &&
-                        ((Attribute) itemToBuy).getTier() == 1 && random.nextFloat() <= 0.20 && player.getLevel() <= 5) {
-                    warn += EmoteReference.WRENCH.toHeaderString() + languageContext.get("commands.market.buy.success_breakable_upgrade") + "\n";
-                }
+                playerMoney = updated.getCurrentMoney();
+            }
 
-                ctx.sendLocalized(message, warn + EmoteReference.OK, itemNumber, itemToBuy.getEmoji(), value, playerMoney);
-            } else {
-                ctx.sendLocalized("commands.market.buy.not_enough_money", warn + EmoteReference.STOP, player.getCurrentMoney(), value);
+            var message = "commands.market.buy.success";
+            if (itemToBuy instanceof Breakable) {
+                message = "commands.market.buy.success_breakable";
+            }
+
+            if (itemToBuy instanceof Potion) {
+                message = "commands.market.buy.success_potion";
             }
+
+            if (itemToBuy instanceof Attribute && !(itemToBuy instanceof Wrench) &&
+                    ((Attribute) itemToBuy).getTier() == 1 && random.nextFloat() <= 0.20 && player.getLevel() <= 5) {
+                warn += EmoteReference.WRENCH.toHeaderString() + languageContext.get("commands.market.buy.success_breakable_upgrade") + "\n";
+            }
+
+            ctx.sendLocalized(message, warn + EmoteReference.OK, itemNumber, itemToBuy.getEmoji(), value, playerMoney);
         } catch (Exception e) {
             e.printStackTrace();
             ctx.send(warn + EmoteReference.ERROR + languageContext.get("general.invalid_syntax"));
@@ -251,11 +251,8 @@ public class MessageCmds {
                 success -> {
                     ctx.sendLocalized("commands.prune.success", EmoteReference.PENCIL, size);
 
-                    var db = ctx.getDBGuild();
-                    db.getData().setCases(db.getData().getCases() + 1);
-                    db.saveAsync();
                     ModLog.log(ctx.getMember(), null, "Pruned Messages",
-                            ctx.getChannel().getName(), ModLog.ModAction.PRUNE, db.getData().getCases(), size
+                            ctx.getChannel().getName(), ModLog.ModAction.PRUNE, ModLog.nextCase(ctx.getGuild()), size
                     );
                 },
                 error -> {
@@ -92,7 +92,6 @@ public class ModerationCmds {
                     return;
                 }
 
-                var dbGuild = ctx.getDBGuild();
                 var languageContext = ctx.getLanguageContext();
 
                 guild.ban(member, 7).reason(finalReason).queue(
@@ -108,8 +107,7 @@ public class ModerationCmds {
                                                             ctx.getGuild().getName()))
                                     ).queue();
 
-                            dbGuild.getData().setCases(dbGuild.getData().getCases() + 1);
-                            dbGuild.saveAsync();
+                            var caseNumber = ModLog.nextCase(guild);
 
                             ctx.sendLocalized("commands.softban.success", EmoteReference.ZAP, languageContext.get("general.mod_quotes"), user.getName());
                             guild.unban(user).reason(finalReason).queue(__ -> { }, error -> {
@@ -126,7 +124,7 @@ public class ModerationCmds {
                                 }
                             });
 
-                            ModLog.log(ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.KICK, dbGuild.getData().getCases());
+                            ModLog.log(ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.KICK, caseNumber);
                             TextChannelGround.of(ctx.getEvent()).dropItemWithChance(2, 2);
                         }, error -> {
                             if (error instanceof PermissionException) {
@@ -219,8 +217,6 @@ public class ModerationCmds {
                         return;
                     }
 
-                    final var db = ctx.getDBGuild();
-
                     // DM's before success, because it might be the "c"ast mutual guild.
                     user.openPrivateChannel().queue(privateChannel -> {
                         if (!user.isBot()) {
@@ -235,13 +231,12 @@ public class ModerationCmds {
 
                     guild.ban(member, 7).reason(finalReason).queue(
                             success -> {
-                                db.getData().setCases(db.getData().getCases() + 1);
-                                db.saveUpdating();
+                                var caseNumber = ModLog.nextCase(guild);
 
                                 if (mentionedMembers.size() == 1)
                                     ctx.sendLocalized("commands.ban.success", EmoteReference.ZAP, languageContext.get("general.mod_quotes"), user.getName());
 
-                                ModLog.log(ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.BAN, db.getData().getCases());
+                                ModLog.log(ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.BAN, caseNumber);
                                 TextChannelGround.of(ctx.getEvent()).dropItemWithChance(1, 2);
                             },
                             error ->
@@ -331,7 +326,6 @@ public class ModerationCmds {
                         return;
                     }
 
-                    final var db = ctx.getDBGuild();
                     if (!user.isBot()) {
                         user.openPrivateChannel()
                                 .flatMap(privateChannel ->
@@ -346,11 +340,10 @@ public class ModerationCmds {
 
                     guild.kick(member).reason(finalReason).queue(
                             success -> {
-                                db.getData().setCases(db.getData().getCases() + 1);
-                                db.saveAsync();
+                                var caseNumber = ModLog.nextCase(guild);
 
                                 ctx.sendLocalized("commands.kick.success", EmoteReference.ZAP, ctx.getLanguageContext().get("general.mod_quotes"), user.getName());
-                                ModLog.log(ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.KICK, db.getData().getCases());
+                                ModLog.log(ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.KICK, caseNumber);
                                 TextChannelGround.of(ctx.getEvent()).dropItemWithChance(2, 2);
                             }, error -> {
                                 if (error instanceof PermissionException) {
@@ -168,11 +168,8 @@ public class MuteCmds {
                         );
                     }
 
-                    dbGuild.getData().setCases(dbGuild.getData().getCases() + 1);
-                    dbGuild.saveUpdating();
-
                     ModLog.log(
-                            ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.MUTE, dbGuild.getData().getCases()
+                            ctx.getMember(), user, finalReason, ctx.getChannel().getName(), ModLog.ModAction.MUTE, ModLog.nextCase(ctx.getGuild())
                     );
                 });
             }
@@ -349,9 +346,8 @@ public class MuteCmds {
 
                         ctx.sendLocalized("commands.unmute.success", EmoteReference.CORRECT, user.getName());
 
-                        dbGuild.getData().setCases(dbGuild.getData().getCases() + 1);
                         dbGuild.saveAsync();
-                        ModLog.log(ctx.getMember(), user, finalReason, "none", ModLog.ModAction.UNMUTE, dbGuild.getData().getCases());
+                        ModLog.log(ctx.getMember(), user, finalReason, "none", ModLog.ModAction.UNMUTE, ModLog.nextCase(ctx.getGuild()));
                     } else {
                         ctx.sendLocalized("commands.unmute.no_role_assigned", EmoteReference.ERROR);
                     }
@@ -142,7 +142,8 @@ public class PremiumCmds {
                     key.activate(ctx.getAuthor().getId().equals(key.getOwner()) ? 365 : 180);
                     ctx.sendLocalized("commands.activatekey.user_successful", EmoteReference.POPPER);
                     dbUser.getData().setPremiumKey(key.getId());
-                    dbUser.saveAsync();
+                    dbUser.save();
+                    db.getPremiumCache().invalidateUser(dbUser.getId());
                 }
             }
 
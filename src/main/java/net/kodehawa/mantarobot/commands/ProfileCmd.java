@@ -53,6 +53,7 @@ import java.awt.Color;
 import java.time.DateTimeException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -128,8 +129,18 @@ public class ProfileCmd {
                                 return;
                             }
 
-                            var player = ctx.getPlayer(userLooked);
-                            var dbUser = ctx.getDBUser(userLooked);
+                            // These don't depend on each other: fetch them at the same time.
+                            var db = ctx.db();
+                            var userId = userLooked.getId();
+                            var playerFuture = db.getPlayerAsync(userId);
+                            var dbUserFuture = db.getUserAsync(userId);
+                            var marriageFuture = dbUserFuture.thenCompose(u -> db.getMarriageAsync(u.getData().getMarriageId()));
+                            var seasonalFuture = isSeasonal ?
+                                    db.getPlayerForSeasonAsync(userId, ctx.getConfig().getCurrentSeason()) :
+                                    CompletableFuture.<SeasonPlayer>completedFuture(null);
+
+                            var player = playerFuture.join();
+                            var dbUser = dbUserFuture.join();
 
                             var playerData = player.getData();
                             var userData = dbUser.getData();
@@ -179,11 +190,8 @@ public class ProfileCmd {
                             var badges = playerData.getBadges();
                             Collections.sort(badges);
 
-                            if (isSeasonal) {
-                                seasonalPlayer = ctx.getSeasonPlayer(userLooked);
-                            }
-
-                            var marriage = ctx.getMarriage(userData);
+                            seasonalPlayer = seasonalFuture.join();
+                            var marriage = marriageFuture.join();
                             var ringHolder = player.getInventory().containsItem(ItemReference.RING) && marriage != null;
                             var holder = new ProfileComponent.Holder(userLooked, player, seasonalPlayer, dbUser, marriage, badges);
                             var profileBuilder = new EmbedBuilder();
@@ -640,12 +648,19 @@ public class ProfileCmd {
                         return;
                     }
 
-                    var player = ctx.getPlayer(toLookup);
-                    var dbUser = ctx.getDBUser(toLookup);
+                    var db = ctx.db();
+                    var lookupId = toLookup.getId();
+                    var playerFuture = db.getPlayerAsync(lookupId);
+                    var dbUserFuture = db.getUserAsync(lookupId);
+                    var playerStatsFuture = db.getPlayerStatsAsync(lookupId);
+                    var seasonPlayerFuture = db.getPlayerForSeasonAsync(lookupId, ctx.getConfig().getCurrentSeason());
+
+                    var player = playerFuture.join();
+                    var dbUser = dbUserFuture.join();
                     var data = dbUser.getData();
                     var playerData = player.getData();
-                    var playerStats = ctx.db().getPlayerStats(toLookup);
-                    var seasonPlayer = ctx.getSeasonPlayer(toLookup);
+                    var playerStats = playerStatsFuture.join();
+                    var seasonPlayer = seasonPlayerFuture.join();
 
                     var equippedItems = data.getEquippedItems();
                     var seasonalEquippedItems = seasonPlayer.getData().getEquippedItems();
@@ -20,7 +20,6 @@ import com.google.common.eventbus.Subscribe;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.commands.currency.item.ItemHelper;
 import net.kodehawa.mantarobot.commands.currency.item.ItemReference;
-import net.kodehawa.mantarobot.commands.currency.item.ItemStack;
 import net.kodehawa.mantarobot.commands.utils.RoundedMetricPrefixFormat;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.core.modules.Module;
@@ -45,6 +44,7 @@ import java.util.function.Predicate;
 @Module
 public class TransferCmds {
     private static final int TRANSFER_LIMIT = 500_000;
+    private static final int MAX_STACK = 5000;
 
     @Subscribe
     public void transfer(CommandRegistry cr) {
@@ -128,9 +128,8 @@ public class TransferCmds {
                     return;
                 }
 
+                // Only used to fail early: the transfer itself checks all of this again.
                 final var transferPlayer = ctx.getPlayer();
-                final var toTransfer = ctx.getPlayer(giveTo);
-
                 if (transferPlayer.isLocked()) {
                     ctx.sendLocalized("commands.transfer.own_locked_notice", EmoteReference.ERROR);
                     return;
@@ -141,11 +140,6 @@ public class TransferCmds {
                     return;
                 }
 
-                if (toTransfer.isLocked()) {
-                    ctx.sendLocalized("commands.transfer.receipt_locked_notice", EmoteReference.ERROR);
-                    return;
-                }
-
                 var partyKey = ctx.getAuthor().getId() + ":" + giveTo.getId();
                 if (!partyRateLimiter.process(partyKey)) {
                     ctx.getChannel().sendMessage(
@@ -160,16 +154,17 @@ public class TransferCmds {
                 }
 
                 var amountTransfer = Math.round(toSend * 0.92);
+                var result = ctx.db().transferMoney(ctx.getAuthor().getId(), giveTo.getId(), toSend, amountTransfer);
 
-                if (toTransfer.addMoney(amountTransfer)) {
-                    transferPlayer.removeMoney(toSend);
-                    transferPlayer.saveUpdating();
-
-                    ctx.sendLocalized("commands.transfer.success", EmoteReference.CORRECT, toSend, amountTransfer, giveTo.getName());
-                    toTransfer.saveUpdating();
-                    rateLimiter.limit(toTransfer.getUserId());
-                } else {
-                    ctx.sendLocalized("commands.transfer.receipt_overflow_notice", EmoteReference.ERROR);
+                switch (result) {
+                    case SUCCESS -> {
+                        ctx.sendLocalized("commands.transfer.success", EmoteReference.CORRECT, toSend, amountTransfer, giveTo.getName());
+                        rateLimiter.limit(giveTo.getId());
+                    }
+                    case NOT_ENOUGH -> ctx.sendLocalized("commands.transfer.no_money_notice", EmoteReference.ERROR);
+                    case SENDER_LOCKED -> ctx.sendLocalized("commands.transfer.own_locked_notice", EmoteReference.ERROR);
+                    case RECEIVER_LOCKED -> ctx.sendLocalized("commands.transfer.receipt_locked_notice", EmoteReference.ERROR);
+                    case OVERFLOW -> ctx.sendLocalized("commands.transfer.receipt_overflow_notice", EmoteReference.ERROR);
                 }
             }
 
@@ -267,71 +262,65 @@ public class TransferCmds {
                     return;
                 }
 
+                // Only used to fail early: the transfer itself checks the amounts and locks again.
                 final var player = ctx.getPlayer();
-                final var giveToPlayer = ctx.getPlayer(giveTo);
-
                 if (player.isLocked()) {
                     ctx.sendLocalized("commands.itemtransfer.locked_notice", EmoteReference.ERROR);
                     return;
                 }
 
                 if (args.length == 2) {
-                    if (player.getInventory().containsItem(item)) {
-                        if (item.isHidden()) {
-                            ctx.sendLocalized("commands.itemtransfer.hidden_item", EmoteReference.ERROR);
-                            return;
-                        }
-
-                        if (giveToPlayer.getInventory().getAmount(item) >= 5000) {
-                            ctx.sendLocalized("commands.itemtransfer.overflow", EmoteReference.ERROR);
-                            return;
-                        }
-
-                        player.getInventory().process(new ItemStack(item, -1));
-                        giveToPlayer.getInventory().process(new ItemStack(item, 1));
-                        ctx.sendStrippedLocalized("commands.itemtransfer.success",
+                    if (!player.getInventory().containsItem(item)) {
+                        ctx.sendLocalized("commands.itemtransfer.multiple_items_error", EmoteReference.ERROR);
+                        return;
+                    }
+
+                    if (item.isHidden()) {
+                        ctx.sendLocalized("commands.itemtransfer.hidden_item", EmoteReference.ERROR);
+                        return;
+                    }
+
+                    switch (ctx.db().transferItem(ctx.getAuthor().getId(), giveTo.getId(), ItemHelper.idOf(item), 1, MAX_STACK)) {
+                        case SUCCESS -> ctx.sendStrippedLocalized("commands.itemtransfer.success",
                                 EmoteReference.OK, ctx.getMember().getEffectiveName(), 1,
                                 item.getName(), giveTo.getEffectiveName()
                         );
-                    } else {
-                        ctx.sendLocalized("commands.itemtransfer.multiple_items_error", EmoteReference.ERROR);
+                        case NOT_ENOUGH -> ctx.sendLocalized("commands.itemtransfer.multiple_items_error", EmoteReference.ERROR);
+                        case OVERFLOW -> ctx.sendLocalized("commands.itemtransfer.overflow", EmoteReference.ERROR);
+                        case SENDER_LOCKED -> ctx.sendLocalized("commands.itemtransfer.locked_notice", EmoteReference.ERROR);
                     }
 
-                    player.save();
-                    giveToPlayer.save();
                     return;
                 }
 
+                int amount;
                 try {
-                    int amount = Math.abs(Integer.parseInt(args[2]));
-                    if (player.getInventory().containsItem(item) && player.getInventory().getAmount(item) >= amount) {
-                        if (item.isHidden()) {
-                            ctx.sendLocalized("commands.itemtransfer.hidden_item", EmoteReference.ERROR);
-                            return;
-                        }
-
-                        if (giveToPlayer.getInventory().getAmount(item) + amount > 5000) {
-                            ctx.sendLocalized("commands.itemtransfer.overflow_after", EmoteReference.ERROR);
-                            return;
-                        }
-
-                        player.getInventory().process(new ItemStack(item, amount * -1));
-                        giveToPlayer.getInventory().process(new ItemStack(item, amount));
-
-                        ctx.sendStrippedLocalized("commands.itemtransfer.success", EmoteReference.OK,
-                                ctx.getMember().getEffectiveName(), amount, item.getName(), giveTo.getEffectiveName()
-                        );
-                    } else {
-                        ctx.sendLocalized("commands.itemtransfer.error", EmoteReference.ERROR);
-                    }
+                    amount = Math.abs(Integer.parseInt(args[2]));
                 } catch (NumberFormatException nfe) {
                     ctx.send(String.format(ctx.getLanguageContext().get("general.invalid_number") + " " +
                             ctx.getLanguageContext().get("general.space_notice"), EmoteReference.ERROR)
                     );
+                    return;
                 }
 
-                player.save();
-                giveToPlayer.save();
+                if (amount == 0 || player.getInventory().getAmount(item) < amount) {
+                    ctx.sendLocalized("commands.itemtransfer.error", EmoteReference.ERROR);
+                    return;
+                }
+
+                if (item.isHidden()) {
+                    ctx.sendLocalized("commands.itemtransfer.hidden_item", EmoteReference.ERROR);
+                    return;
+                }
+
+                switch (ctx.db().transferItem(ctx.getAuthor().getId(), giveTo.getId(), ItemHelper.idOf(item), amount, MAX_STACK)) {
+                    case SUCCESS -> ctx.sendStrippedLocalized("commands.itemtransfer.success", EmoteReference.OK,
+                            ctx.getMember().getEffectiveName(), amount, item.getName(), giveTo.getEffectiveName()
+                    );
+                    case NOT_ENOUGH -> ctx.sendLocalized("commands.itemtransfer.error", EmoteReference.ERROR);
+                    case OVERFLOW -> ctx.sendLocalized("commands.itemtransfer.overflow_after", EmoteReference.ERROR);
+                    case SENDER_LOCKED -> ctx.sendLocalized("commands.itemtransfer.locked_notice", EmoteReference.ERROR);
+                }
             }
 
             @Override
@@ -123,6 +123,8 @@ public class WaifuCmd {
                         List<String> toRemove = new ArrayList<>();
                         List<MessageEmbed.Field> fields = new LinkedList<>();
 
+                        // One query for all of them, instead of one per waifu.
+                        final var waifuPlayers = ctx.db().getPlayers(userData.getWaifus().keySet());
                         for (String waifu : userData.getWaifus().keySet()) {
                             //This fixes the issue of cross-node waifus not appearing.
                             User user = ctx.retrieveUserById(waifu);
@@ -134,7 +136,7 @@ public class WaifuCmd {
                                                 languageContext.get("commands.waifu.credits_format"), false)
                                 );
                             } else {
-                                Player waifuClaimed = ctx.getPlayer(user);
+                                Player waifuClaimed = waifuPlayers.get(waifu);
                                 if (waifuClaimed.getData().isWaifuout()) {
                                     toRemove.add(waifu);
                                     continue;
@@ -30,6 +30,7 @@ import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.DBUser;
 import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
 import net.kodehawa.mantarobot.db.entities.helpers.Inventory;
 import net.kodehawa.mantarobot.db.entities.helpers.PlayerData;
 import net.kodehawa.mantarobot.db.entities.helpers.UserData;
@@ -532,9 +533,7 @@ public class ItemHelper {
                 user.save();
             }
 
-            var stats = ctx.getPlayerStats();
-            stats.incrementToolsBroken();
-            stats.saveUpdating();
+            ctx.db().increment(PlayerStats.of(ctx.getAuthor()), "toolsBroken", 1L);
 
             //is broken
             return Pair.of(true, Pair.of(player, user));
@@ -23,6 +23,7 @@ import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.commands.currency.seasons.helpers.SeasonalPlayerData;
 import net.kodehawa.mantarobot.db.ManagedObject;
+import net.kodehawa.mantarobot.db.Versioned;
 import net.kodehawa.mantarobot.db.entities.helpers.Inventory;
 
 import javax.annotation.Nonnull;
@@ -33,7 +34,7 @@ import java.util.Map;
 import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.serialize;
 import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.unserialize;
 
-public class SeasonPlayer implements ManagedObject {
+public class SeasonPlayer implements ManagedObject, Versioned {
     public static final String DB_TABLE = "seasonalplayers";
     private final SeasonalPlayerData data;
     private final String id;
@@ -41,6 +42,7 @@ public class SeasonPlayer implements ManagedObject {
     private Long money;
     private Long reputation;
     private final Season season;
+    private long version;
 
     @JsonCreator
     @ConstructorProperties({"id", "season", "money", "inventory", "reputation", "data"})
@@ -138,6 +140,16 @@ public class SeasonPlayer implements ManagedObject {
         return this.id;
     }
 
+    @Override
+    public long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @JsonIgnore
     @Override
     @Nonnull
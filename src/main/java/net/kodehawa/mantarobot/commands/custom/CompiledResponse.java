@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.kodehawa.mantarobot.commands.custom.legacy.ConditionalCustoms;
+import net.kodehawa.mantarobot.commands.custom.v3.CCv3;
+import net.kodehawa.mantarobot.commands.custom.v3.Parser;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.Program;
+import net.kodehawa.mantarobot.utils.data.JsonDataManager;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A custom command response, with everything that doesn't depend on who runs it already done:
+ * v3 responses are parsed and compiled into a {@link Program}, and legacy responses without {@code $(} modifiers are resolved, split from their
+ * handler prefix and, if they're an embed, parsed into an {@link EmbedJSON}.
+ *
+ * <p>Instances can't be modified, and they're cached by the response itself (by its content), so the same response is
+ * compiled once no matter how many commands (or guilds) use it.
+ */
+final class CompiledResponse {
+    // Same as the handlers on CustomCommandHandler. Anything else before a colon is just text.
+    static final Set<String> SPECIAL_HANDLERS = Set.of(
+            "text", "play", "embed", "img", "image", "imgembed", "iam", "iamnot", "iamcustom", "iamnotcustom"
+    );
+
+    private static final Pattern FILTERED = Pattern.compile("([a-zA-Z0-9]{24}\\.[a-zA-Z0-9]{6}\\.[a-zA-Z0-9_\\-])\\w+");
+    private static final Pattern ESCAPE = Pattern.compile("\\\\");
+    // Weighed by length: a few huge responses shouldn't push out all the small ones.
+    private static final Cache<String, CompiledResponse> cache = CacheBuilder.newBuilder()
+            .maximumWeight(16_000_000)
+            .weigher((String response, CompiledResponse compiled) -> response.length() + 1)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    private final Program program;
+    private final boolean dynamic;
+    private final String handler;
+    private final String value;
+    private final EmbedJSON embed;
+    private final String text;
+
+    private CompiledResponse(Program program, boolean dynamic, String handler, String value, EmbedJSON embed, String text) {
+        this.program = program;
+        this.dynamic = dynamic;
+        this.handler = handler;
+        this.value = value;
+        this.embed = embed;
+        this.text = text;
+    }
+
+    /**
+     * Gets the compiled version of a response, compiling it if it isn't cached.
+     * Responses that fail to compile (v3 syntax errors) aren't cached, and throw every time.
+     *
+     * @param response The response, as saved on the custom command.
+     * @return The compiled response.
+     * @throws net.kodehawa.mantarobot.commands.custom.v3.SyntaxException If it's a v3 response with a syntax error.
+     */
+    static CompiledResponse of(String response) {
+        var compiled = cache.getIfPresent(response);
+        if (compiled == null) {
+            compiled = compile(response);
+            cache.put(response, compiled);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Compiles a response without caching it, for one-off responses like previews.
+     *
+     * @param response The response.
+     * @return The compiled response.
+     */
+    static CompiledResponse compile(String response) {
+        if (response.startsWith("v3:")) {
+            return new CompiledResponse(CCv3.compile(new Parser(response.substring(3)).parse()), false, null, null, null, null);
+        }
+
+        // $( modifiers depend on who ran it and where, so those have to be resolved every time.
+        if (!response.startsWith("text:") && response.contains("$(")) {
+            return new CompiledResponse(null, true, null, null, null, null);
+        }
+
+        var resolved = response.startsWith("text:") ? response : ConditionalCustoms.resolve(response, 0);
+        var colon = resolved.indexOf(':');
+        if (colon != -1 && SPECIAL_HANDLERS.contains(resolved.substring(0, colon))) {
+            var handler = resolved.substring(0, colon);
+            var value = resolved.substring(colon + 1);
+            return new CompiledResponse(null, false, handler, value, handler.equals("embed") ? parseEmbed(value) : null, null);
+        }
+
+        return new CompiledResponse(null, false, null, null, null, FILTERED.matcher(resolved).replaceAll("-filtered regex-"));
+    }
+
+    /**
+     * Parses the value of an embed: response.
+     *
+     * @param value What's after embed:, without the braces.
+     * @return The parsed embed.
+     * @throws JsonProcessingException If it's not valid JSON for an embed.
+     */
+    static EmbedJSON readEmbed(String value) throws JsonProcessingException {
+        // Matcher: Replace all \ with \\.
+        var json = ESCAPE.matcher(value).replaceAll("\\\\\\\\");
+        return JsonDataManager.fromJson('{' + json + '}', EmbedJSON.class);
+    }
+
+    // Invalid ones are left to run normally, which reports what's wrong with them.
+    private static EmbedJSON parseEmbed(String value) {
+        try {
+            return readEmbed(value);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The compiled v3 response, or null if it isn't one.
+     */
+    Program getProgram() {
+        return program;
+    }
+
+    /**
+     * @return Whether this is a legacy response with modifiers, which has to be processed when it runs.
+     */
+    boolean isDynamic() {
+        return dynamic;
+    }
+
+    /**
+     * @return The special handler this response goes to (embed, img, iam...), or null if it's plain text.
+     */
+    String getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return What's passed to the special handler.
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The parsed embed, for valid embed: responses.
+     */
+    EmbedJSON getEmbed() {
+        return embed;
+    }
+
+    /**
+     * @return The text to send, already filtered, for plain text responses.
+     */
+    String getText() {
+        return text;
+    }
+}
@@ -24,13 +24,11 @@ import net.kodehawa.mantarobot.commands.MiscCmds;
 import net.kodehawa.mantarobot.commands.custom.legacy.ConditionalCustoms;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
 import net.kodehawa.mantarobot.commands.custom.v3.CCv3;
-import net.kodehawa.mantarobot.commands.custom.v3.Parser;
 import net.kodehawa.mantarobot.commands.info.stats.CategoryStatsManager;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.utils.StringUtils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
-import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 
 import java.net.URL;
 import java.util.LinkedHashMap;
@@ -39,11 +37,11 @@ import java.util.Map;
 import java.util.regex.Pattern;
 
 public class CustomCommandHandler {
-    private static final Map<String, Func> specialHandlers = new LinkedHashMap<>();
     //there's no way in hell this would work but ok
     //actually p sure this is just to make me feel safer and serves no purpose whatsoever.
     private static final Pattern filtered = Pattern.compile("([a-zA-Z0-9]{24}\\.[a-zA-Z0-9]{6}\\.[a-zA-Z0-9_\\-])\\w+");
-    private static final Pattern escape = Pattern.compile("\\\\");
+    // Per instance: some of them use this handler's prefix and context. Keep the names in sync with CompiledResponse.
+    private final Map<String, Func> specialHandlers = new LinkedHashMap<>();
     private final String args;
     private final Context ctx;
     private String response;
@@ -74,24 +72,7 @@ public class CustomCommandHandler {
             MantaroBot.getInstance().getAudioManager().loadAndPlay(ctx.getEvent(), value, false, false, ctx.getLanguageContext());
         });
 
-        specialHandlers.put("embed", (ctx, value, args) -> {
-            try {
-                // Matcher: Replace all \ with \\.
-                var json = escape.matcher(value).replaceAll("\\\\\\\\");
-                EmbedJSON embed = JsonDataManager.fromJson('{' + json + '}', EmbedJSON.class);
-
-                ctx.send(embed.gen(ctx.getMember()));
-            } catch (IllegalArgumentException invalid) {
-                if (invalid.getMessage().contains("URL must be a valid http or https url")) {
-                    ctx.sendLocalized("commands.custom.invalid_image", EmoteReference.ERROR2);
-                } else {
-                    ctx.sendLocalized("commands.custom.invalid_string", EmoteReference.ERROR2, value);
-                }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                ctx.sendLocalized("commands.custom.invalid_json", EmoteReference.ERROR2, value);
-            }
-        });
+        specialHandlers.put("embed", (ctx, value, args) -> sendEmbed(ctx, value, null));
 
         specialHandlers.put("img", (ctx, value, args) -> {
             try {
@@ -141,17 +122,34 @@ public class CustomCommandHandler {
     }
 
     public void handle(boolean preview) {
-        if (!processResponse())
-            return;
-        if (specialHandling())
+        // Previews are one-off: no point in caching them.
+        var compiled = preview ? CompiledResponse.compile(response) : CompiledResponse.of(response);
+        if (compiled.getProgram() != null) {
+            CCv3.process(prefixUsed, ctx, compiled.getProgram(), preview);
             return;
+        }
+
+        String content;
+        if (compiled.isDynamic()) {
+            if (!processResponse())
+                return;
+            if (specialHandling())
+                return;
+
+            content = filtered.matcher(response).replaceAll("-filtered regex-");
+        } else if (compiled.getHandler() != null) {
+            if (compiled.getEmbed() != null) {
+                sendEmbed(ctx, compiled.getValue(), compiled.getEmbed());
+            } else {
+                specialHandlers.get(compiled.getHandler()).handle(ctx, compiled.getValue(), args);
+            }
 
-        if (response.startsWith("v3:")) {
-            CCv3.process(prefixUsed, ctx, new Parser(response.substring(3)).parse(), preview);
             return;
+        } else {
+            content = compiled.getText();
         }
 
-        MessageBuilder builder = new MessageBuilder().setContent(filtered.matcher(response).replaceAll("-filtered regex-"));
+        MessageBuilder builder = new MessageBuilder().setContent(content);
         if (preview) {
             builder.append("\n\n")
                     .append(EmoteReference.WARNING)
@@ -187,6 +185,22 @@ public class CustomCommandHandler {
         return true;
     }
 
+    private static void sendEmbed(Context ctx, String value, EmbedJSON parsed) {
+        try {
+            EmbedJSON embed = parsed == null ? CompiledResponse.readEmbed(value) : parsed;
+            ctx.send(embed.gen(ctx.getMember()));
+        } catch (IllegalArgumentException invalid) {
+            if (invalid.getMessage().contains("URL must be a valid http or https url")) {
+                ctx.sendLocalized("commands.custom.invalid_image", EmoteReference.ERROR2);
+            } else {
+                ctx.sendLocalized("commands.custom.invalid_string", EmoteReference.ERROR2, value);
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            ctx.sendLocalized("commands.custom.invalid_json", EmoteReference.ERROR2, value);
+        }
+    }
+
     private String processText(String text) {
         if (text.contains("$(")) {
             text = new DynamicModifiers()
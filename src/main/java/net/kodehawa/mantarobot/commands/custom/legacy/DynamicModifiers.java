@@ -16,6 +16,9 @@
 
 package net.kodehawa.mantarobot.commands.custom.legacy;
 
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.events.guild.GenericGuildEvent;
 import net.dv8tion.jda.api.events.guild.member.GenericGuildMemberEvent;
@@ -24,90 +27,152 @@ import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.utils.Utils;
 
 import java.time.OffsetDateTime;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static net.kodehawa.mantarobot.utils.Utils.iterate;
 
+/**
+ * Variables for legacy custom commands and guild messages (join, leave, logs...), as in {@code $(event.user.name)}.
+ *
+ * <p>The map*() methods only register how to get each value: nothing is computed until {@link #get(Object)} asks for
+ * it, so a message that uses one variable doesn't look up the other fifty (or fetch the guild owner).
+ * Values set directly are still stored right away, and the first value given for a key is the one that's kept.
+ */
 public class DynamicModifiers extends LinkedHashMap<String, String> {
     private static final long serialVersionUID = 1;
     private static final Pattern GETTER_MODIFIER = Pattern.compile("\\$\\([A-Za-z0-9.]+?\\)");
+    private static final Pattern ESCAPED = Pattern.compile("[^\\\\]\\\\[^\\\\]");
+    // The $(...) keys of each template, in order and without duplicates. Templates are mostly guild settings
+    // and saved commands, so the same few get resolved over and over.
+    private static final Cache<String, List<String>> templateKeys = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    private final transient Map<String, Supplier<String>> suppliers = new HashMap<>();
 
     private static String k(String... parts) {
         return String.join(".", parts);
     }
 
+    private static List<String> keysOf(String template) {
+        var keys = templateKeys.getIfPresent(template);
+        if (keys == null) {
+            var found = new LinkedHashSet<String>();
+            for (String key : iterate(GETTER_MODIFIER, template)) {
+                found.add(key);
+            }
+
+            keys = List.copyOf(found);
+            templateKeys.put(template, keys);
+        }
+
+        return keys;
+    }
+
     public String resolve(String string) {
         if (!string.contains("$("))
             return string;
 
-        Set<String> dejaVu = new HashSet<>();
-        for (String key : iterate(GETTER_MODIFIER, string)) {
-            if (dejaVu.contains(key))
-                continue;
-
+        for (String key : keysOf(string)) {
             String mapKey = key.substring(2, key.length() - 1);
             String value = get(mapKey);
             if (value == null) {
                 value = "{Unresolved variable " + mapKey + "}";
             }
 
-            string = string.replace(key, value.replaceAll("[^\\\\]\\\\[^\\\\]", "\\\\"));
+            string = string.replace(key, ESCAPED.matcher(value).replaceAll("\\\\"));
             if (!string.contains("$("))
                 break;
-
-            dejaVu.add(key);
         }
 
         return string;
     }
 
+    @Override
+    public String get(Object key) {
+        if (super.containsKey(key)) {
+            return super.get(key);
+        }
+
+        var supplier = suppliers.remove(key);
+        if (supplier == null) {
+            return null;
+        }
+
+        var value = supplier.get();
+        super.put((String) key, value);
+        return value;
+    }
+
+    @Override
+    public String getOrDefault(Object key, String defaultValue) {
+        return containsKey(key) ? get(key) : defaultValue;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return super.containsKey(key) || suppliers.containsKey(key);
+    }
+
     public DynamicModifiers mapGuild(String prefix, Guild guild) {
         return this.set(prefix, guild.getName())
                 .set(prefix, "name", guild.getName())
-                .mapMember(k(prefix, "owner"), guild.retrieveOwner(false).complete())
-                .set(prefix, "region", guild.getRegion().getName())
-                .set(prefix, "totalusers", String.valueOf(guild.getMemberCount()))
-                .set(prefix, "icon", guild.getIconUrl() == null ? "https://i.imgur.com/k0V7Vnu.png" : guild.getIconUrl());
+                // Blocks if the owner isn't cached, so only when someone actually uses it.
+                .mapMember(k(prefix, "owner"), Suppliers.memoize(() -> guild.retrieveOwner(false).complete()))
+                .set(prefix, "region", () -> guild.getRegion().getName())
+                .set(prefix, "totalusers", () -> String.valueOf(guild.getMemberCount()))
+                .set(prefix, "icon", () -> guild.getIconUrl() == null ? "https://i.imgur.com/k0V7Vnu.png" : guild.getIconUrl());
     }
 
     public DynamicModifiers mapUser(String prefix, User member) {
-        return this.set(prefix, member.getAsMention())
-                .set(prefix, "tag", member.getAsTag())
-                .set(prefix, "username", member.getName())
-                .set(prefix, "discriminator", member.getDiscriminator())
-                .set(prefix, "name", member.getName())
-                .set(prefix, "mention", member.getAsMention())
-                .set(prefix, "avatar", member.getEffectiveAvatarUrl())
-                .set(prefix, "id", member.getId());
+        return mapUser(prefix, () -> member);
     }
 
     public DynamicModifiers mapMember(String prefix, Member member) {
-        return this.mapUser(prefix, member.getUser())
-                .set(prefix, "name", member.getEffectiveName())
-                .set(prefix, "nickname", member.getEffectiveName());
+        return mapMember(prefix, () -> member);
+    }
+
+    private DynamicModifiers mapUser(String prefix, Supplier<User> member) {
+        return this.set(prefix, () -> member.get().getAsMention())
+                .set(prefix, "tag", () -> member.get().getAsTag())
+                .set(prefix, "username", () -> member.get().getName())
+                .set(prefix, "discriminator", () -> member.get().getDiscriminator())
+                .set(prefix, "name", () -> member.get().getName())
+                .set(prefix, "mention", () -> member.get().getAsMention())
+                .set(prefix, "avatar", () -> member.get().getEffectiveAvatarUrl())
+                .set(prefix, "id", () -> member.get().getId());
+    }
+
+    private DynamicModifiers mapMember(String prefix, Supplier<Member> member) {
+        return this.mapUser(prefix, () -> member.get().getUser())
+                .set(prefix, "name", () -> member.get().getEffectiveName())
+                .set(prefix, "nickname", () -> member.get().getEffectiveName());
     }
 
     public DynamicModifiers mapEvent(String botPrefix, String prefix, Context ctx) {
         return this.mapEvent(prefix, ctx.getEvent())
-                .set(prefix, ctx.getMember().getAsMention() + "@" + ctx.getChannel().getAsMention())
+                .set(prefix, () -> ctx.getMember().getAsMention() + "@" + ctx.getChannel().getAsMention())
                 .mapMember(k(prefix, "author"), ctx.getMember())
                 // This gets processed later on
-                .mapMessage(k(prefix, "message"), new CustomMessage(ctx.getContent(), ctx.getMessage().getMentionedMembers(), ctx.isMentionPrefix()));
+                .mapMessage(k(prefix, "message"), Suppliers.memoize(() ->
+                        new CustomMessage(ctx.getContent(), ctx.getMessage().getMentionedMembers(), ctx.isMentionPrefix())
+                ));
     }
 
     public DynamicModifiers mapEvent(String prefix, GenericGuildMessageEvent event) {
-        return this.set(prefix, "timestamp", Utils.formatDate(OffsetDateTime.now()))
+        return this.set(prefix, "timestamp", () -> Utils.formatDate(OffsetDateTime.now()))
                 .mapChannel(k(prefix, "channel"), event.getChannel())
                 .mapGuild(k(prefix, "guild"), event.getGuild())
                 .mapMember(k(prefix, "me"), event.getGuild().getSelfMember());
     }
 
     public DynamicModifiers mapEvent(String prefix, GenericGuildMemberEvent event) {
-        return this.set(prefix, event.getMember().getAsMention() + "@" + event.getGuild().getName())
+        return this.set(prefix, () -> event.getMember().getAsMention() + "@" + event.getGuild().getName())
                 .mapGuild(k(prefix, "guild"), event.getGuild())
                 .mapMember(k(prefix, "me"), event.getGuild().getSelfMember())
                 .mapMember(k(prefix, "user"), event.getMember());
@@ -119,30 +184,36 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
     }
 
     public DynamicModifiers mapMessage(String prefix, Message message, boolean isMentionPrefix) {
-        return mapMessage(prefix, new CustomMessage(message.getContentRaw(), message.getMentionedMembers(), isMentionPrefix));
+        return mapMessage(prefix, Suppliers.memoize(() ->
+                new CustomMessage(message.getContentRaw(), message.getMentionedMembers(), isMentionPrefix)
+        ));
     }
 
     public DynamicModifiers mapMessage(String prefix, CustomMessage message) {
-        return this.set(prefix, message.getContentRaw())
-                .set(prefix, "raw", message.getContentRaw())
+        return mapMessage(prefix, () -> message);
+    }
+
+    private DynamicModifiers mapMessage(String prefix, Supplier<CustomMessage> message) {
+        return this.set(prefix, () -> message.get().getContentRaw())
+                .set(prefix, "raw", () -> message.get().getContentRaw())
                 // textual and stripped are deprecated!
-                .set(prefix, "textual", message.getContentRaw())
-                .set(prefix, "stripped", message.getContentRaw())
-                .set(prefix, "mentionnames", message.getMentionedUsers().stream().map(Member::getEffectiveName).collect(Collectors.joining(", ")))
-                .set(prefix, "mentionids", message.getMentionedUsers().stream().map(Member::getId).collect(Collectors.joining(", ")))
-                .set(prefix, "firstmentionid", message.getMentionedUsers().isEmpty() ? "" : message.getMentionedUsers().get(0).getId());
+                .set(prefix, "textual", () -> message.get().getContentRaw())
+                .set(prefix, "stripped", () -> message.get().getContentRaw())
+                .set(prefix, "mentionnames", () -> message.get().getMentionedUsers().stream().map(Member::getEffectiveName).collect(Collectors.joining(", ")))
+                .set(prefix, "mentionids", () -> message.get().getMentionedUsers().stream().map(Member::getId).collect(Collectors.joining(", ")))
+                .set(prefix, "firstmentionid", () -> message.get().getMentionedUsers().isEmpty() ? "" : message.get().getMentionedUsers().get(0).getId());
     }
 
     public DynamicModifiers mapChannel(String prefix, TextChannel channel) {
-        return this.set(prefix, channel.getAsMention())
-                .set(prefix, "topic", channel.getTopic())
-                .set(prefix, "name", channel.getName())
-                .set(prefix, "id", channel.getId())
-                .set(prefix, "mention", channel.getAsMention());
+        return this.set(prefix, channel::getAsMention)
+                .set(prefix, "topic", channel::getTopic)
+                .set(prefix, "name", channel::getName)
+                .set(prefix, "id", channel::getId)
+                .set(prefix, "mention", channel::getAsMention);
     }
 
     public DynamicModifiers mapFromJoinLeave(String prefix, TextChannel channel, User user, Guild guild) {
-        return this.set(prefix, user.getName() + "@" + guild.getName())
+        return this.set(prefix, () -> user.getName() + "@" + guild.getName())
                 .mapGuild(k(prefix, "guild"), guild)
                 .mapMember(k(prefix, "me"), guild.getSelfMember())
                 .mapUser(k(prefix, "user"), user)
@@ -159,4 +230,18 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
     public DynamicModifiers set(String prefix, String key, String value) {
         return set(k(prefix, key), value);
     }
+
+    /**
+     * Like {@link #set(String, String)}, but the value is only computed if it's used.
+     */
+    public DynamicModifiers set(String key, Supplier<String> value) {
+        if (!containsKey(key))
+            suppliers.put(key, value);
+
+        return this;
+    }
+
+    public DynamicModifiers set(String prefix, String key, Supplier<String> value) {
+        return set(k(prefix, key), value);
+    }
 }
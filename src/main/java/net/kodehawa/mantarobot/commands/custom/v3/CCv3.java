@@ -23,9 +23,11 @@ import net.kodehawa.mantarobot.commands.MiscCmds;
 import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
 import net.kodehawa.mantarobot.commands.custom.v3.ast.Node;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.CompilableOperation;
 import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterContext;
-import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterVisitor;
 import net.kodehawa.mantarobot.commands.custom.v3.interpreter.Operation;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.Program;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.StepLimitException;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
@@ -35,8 +37,11 @@ import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -48,6 +53,10 @@ import static java.time.format.DateTimeFormatter.ISO_LOCAL_TIME;
 public class CCv3 {
     private static final Pattern USER_MENTION_PATTERN = Pattern.compile("(?:<@!?)?(\\d{1,20})>?");
     private static final Map<String, Operation> DEFAULT_OPERATIONS = new HashMap<>();
+    // Operations that only depend on their arguments. With constant arguments, these run when compiling.
+    private static final Set<String> PURE_OPERATIONS = Set.of(
+            "if", "compare", "test", "and", "or", "not", "not-empty", "not-empty-strict", "lower", "upper", "replace"
+    );
     private static final Pattern FILTER = Pattern.compile("([a-zA-Z0-9]{24}\\.[a-zA-Z0-9]{6}\\.[a-zA-Z0-9_\\-])\\w+");
     private static final Pattern ESCAPE = Pattern.compile("\\\\");
     private static final DateTimeFormatter DEFAULT_TIMESTAMP_FORMATTER = new DateTimeFormatterBuilder()
@@ -83,7 +92,7 @@ public class CCv3 {
         comparators.put("ends-with", String::endsWith);
         comparators.put("ignorecase-ends-with", (s1, s2) -> s1.toLowerCase().endsWith(s2.toLowerCase()));
 
-        DEFAULT_OPERATIONS.put("if", (__, args) -> {
+        Operation ifOperation = (__, args) -> {
             if (args.size() < 1) {
                 return "{If: missing required parameter <lhs>}";
             }
@@ -95,35 +104,22 @@ public class CCv3 {
             }
             String input1 = args.get(0).evaluate();
             String compare = args.get(1).evaluate();
+            return ifResult(input1, compare, comparators.get(compare), predicates.get(compare), args);
+        };
+
+        // Conditions are almost always written out, so the comparator can be looked up once.
+        DEFAULT_OPERATIONS.put("if", CompilableOperation.of(ifOperation, constants -> {
+            String compare = constants.size() < 3 ? null : constants.get(1);
+            if (compare == null) {
+                return ifOperation;
+            }
 
-            int resultIdx;
             BiPredicate<String, String> comparator = comparators.get(compare);
             Predicate<String> predicate = predicates.get(compare);
-            if (comparator != null) {
-                String input2 = args.get(2).evaluate();
-                resultIdx = comparator.test(input1, input2) ? 3 : 4;
-            } else if (predicate != null) {
-                if (predicate.test(input1)) {
-                    return args.get(2).evaluate();
-                }
-
-                resultIdx = 3;
-            } else {
-                if (compare.equals("true") || compare.equals("false")) {
-                    resultIdx = compare.equals("true") ? 0 : 2;
-                } else {
-                    return "{If: operand " + compare + " is not a comparator, predicate nor boolean}";
-                }
-            }
-
-            if (args.size() > resultIdx) {
-                return args.get(resultIdx).evaluate();
-            } else {
-                return "";
-            }
-        });
+            return (__, args) -> ifResult(args.get(0).evaluate(), compare, comparator, predicate, args);
+        }));
 
-        DEFAULT_OPERATIONS.put("compare", (__, args) -> {
+        Operation compareOperation = (__, args) -> {
             if (args.size() < 1) {
                 return "{Compare: missing required parameter <lhs>}";
             }
@@ -136,14 +132,24 @@ public class CCv3 {
             String lhs = args.get(0).evaluate();
             String cmp = args.get(1).evaluate();
             String rhs = args.get(2).evaluate();
-            BiPredicate<String, String> comparator = comparators.get(cmp);
-            if (comparator == null) {
-                return "{Compare: unknown comparator " + cmp + "}";
+            return compareResult(lhs, cmp, rhs, comparators.get(cmp));
+        };
+
+        DEFAULT_OPERATIONS.put("compare", CompilableOperation.of(compareOperation, constants -> {
+            String cmp = constants.size() < 3 ? null : constants.get(1);
+            if (cmp == null) {
+                return compareOperation;
             }
-            return Boolean.toString(comparator.test(lhs, rhs));
-        });
 
-        DEFAULT_OPERATIONS.put("test", (__, args) -> {
+            BiPredicate<String, String> comparator = comparators.get(cmp);
+            return (__, args) -> {
+                String lhs = args.get(0).evaluate();
+                String rhs = args.get(2).evaluate();
+                return compareResult(lhs, cmp, rhs, comparator);
+            };
+        }));
+
+        Operation testOperation = (__, args) -> {
             if (args.size() < 1) {
                 return "{Test: missing required parameter <predicate>}";
             }
@@ -152,12 +158,18 @@ public class CCv3 {
             }
             String predicate = args.get(0).evaluate();
             String operand = args.get(1).evaluate();
-            Predicate<String> p = predicates.get(predicate);
-            if (p == null) {
-                return "{Test: unknown predicate " + predicate + "}";
+            return testResult(predicate, operand, predicates.get(predicate));
+        };
+
+        DEFAULT_OPERATIONS.put("test", CompilableOperation.of(testOperation, constants -> {
+            String predicate = constants.size() < 2 ? null : constants.get(0);
+            if (predicate == null) {
+                return testOperation;
             }
-            return Boolean.toString(p.test(operand));
-        });
+
+            Predicate<String> p = predicates.get(predicate);
+            return (__, args) -> testResult(predicate, args.get(1).evaluate(), p);
+        }));
 
         DEFAULT_OPERATIONS.put("and", (__, args) -> {
             boolean res = true;
@@ -341,11 +353,76 @@ public class CCv3 {
         });
     }
 
-    public static void process(String prefix, Context ctx, Node ast, boolean preview) {
+    private static String ifResult(String input1, String compare, BiPredicate<String, String> comparator,
+                                   Predicate<String> predicate, List<Operation.Argument> args) {
+        int resultIdx;
+        if (comparator != null) {
+            String input2 = args.get(2).evaluate();
+            resultIdx = comparator.test(input1, input2) ? 3 : 4;
+        } else if (predicate != null) {
+            if (predicate.test(input1)) {
+                return args.get(2).evaluate();
+            }
+
+            resultIdx = 3;
+        } else {
+            if (compare.equals("true") || compare.equals("false")) {
+                resultIdx = compare.equals("true") ? 0 : 2;
+            } else {
+                return "{If: operand " + compare + " is not a comparator, predicate nor boolean}";
+            }
+        }
+
+        if (args.size() > resultIdx) {
+            return args.get(resultIdx).evaluate();
+        } else {
+            return "";
+        }
+    }
+
+    private static String compareResult(String lhs, String cmp, String rhs, BiPredicate<String, String> comparator) {
+        if (comparator == null) {
+            return "{Compare: unknown comparator " + cmp + "}";
+        }
+        return Boolean.toString(comparator.test(lhs, rhs));
+    }
+
+    private static String testResult(String predicate, String operand, Predicate<String> p) {
+        if (p == null) {
+            return "{Test: unknown predicate " + predicate + "}";
+        }
+        return Boolean.toString(p.test(operand));
+    }
+
+    /**
+     * @return The operations v3 responses can use. Can't be modified.
+     */
+    public static Map<String, Operation> operations() {
+        return Collections.unmodifiableMap(DEFAULT_OPERATIONS);
+    }
+
+    /**
+     * Compiles a parsed v3 response. The result can be kept and run as many times as needed.
+     *
+     * @param ast The parsed response.
+     * @return The compiled program.
+     */
+    public static Program compile(Node ast) {
+        return Program.compile(ast, DEFAULT_OPERATIONS, PURE_OPERATIONS);
+    }
+
+    public static void process(String prefix, Context ctx, Program program, boolean preview) {
         InterpreterContext context = new InterpreterContext(new DynamicModifiers()
                 .mapEvent(prefix, "event", ctx), DEFAULT_OPERATIONS, ctx);
 
-        String result = ast.accept(new InterpreterVisitor(), context);
+        String result;
+        try {
+            result = program.run(context);
+        } catch (StepLimitException e) {
+            ctx.send(EmoteReference.ERROR + "This command's response is too big to run.");
+            return;
+        }
+
         EmbedJSON embed = context.get("embed");
 
         if (embed == null && result.isEmpty()) {
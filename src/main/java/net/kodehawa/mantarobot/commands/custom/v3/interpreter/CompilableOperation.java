@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom.v3.interpreter;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * An operation that can do part of its work when the program is compiled, using the arguments that are constants.
+ * For example, {@code if} looks up its comparator once instead of on every run.
+ */
+public interface CompilableOperation extends Operation {
+    /**
+     * @param constants The value of each argument if it's a constant, or null if it's only known when running.
+     * @return The operation to run instead, or this if there's nothing to gain.
+     */
+    Operation bind(List<String> constants);
+
+    /**
+     * Makes an operation compilable.
+     *
+     * @param operation The operation, used when it can't be bound and when it isn't compiled.
+     * @param binder    Gets the constant arguments (see {@link #bind(List)}), and returns the operation to use instead.
+     * @return The compilable operation.
+     */
+    static CompilableOperation of(Operation operation, Function<List<String>, Operation> binder) {
+        return new CompilableOperation() {
+            @Override
+            public Operation bind(List<String> constants) {
+                return binder.apply(constants);
+            }
+
+            @Override
+            public String apply(InterpreterContext context, List<Argument> args) {
+                return operation.apply(context, args);
+            }
+        };
+    }
+}
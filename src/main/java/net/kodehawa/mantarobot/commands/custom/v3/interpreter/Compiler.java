@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom.v3.interpreter;
+
+import net.kodehawa.mantarobot.commands.custom.v3.ast.*;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.Evaluator.Constant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns an AST into evaluators, doing everything that doesn't depend on the run: operations are looked up here,
+ * and anything made only of constants (literals, and pure operations on literals) is worked out right away.
+ * The results are the same as {@link InterpreterVisitor}'s.
+ */
+class Compiler implements NodeVisitor<Evaluator, Void> {
+    private final Map<String, Operation> operations;
+    private final Set<String> pureOperations;
+
+    Compiler(Map<String, Operation> operations, Set<String> pureOperations) {
+        this.operations = operations;
+        this.pureOperations = pureOperations;
+    }
+
+    @Override
+    public Evaluator visitLiteral(LiteralNode node, Void context) {
+        return new Constant(node.value());
+    }
+
+    @Override
+    public Evaluator visitVariable(VariableNode node, Void context) {
+        var name = node.name().accept(this, context);
+        // Variables can be changed by set, so they're always looked up when running.
+        if (name instanceof Constant) {
+            var key = ((Constant) name).evaluate();
+            return ctx -> {
+                ctx.step();
+                return variable(ctx, key);
+            };
+        }
+
+        return ctx -> {
+            ctx.step();
+            return variable(ctx, name.evaluate(ctx));
+        };
+    }
+
+    @Override
+    public Evaluator visitOperation(OperationNode node, Void context) {
+        var name = node.name().accept(this, context);
+        var args = node.args().stream()
+                .map(arg -> arg.accept(this, context))
+                .toArray(Evaluator[]::new);
+
+        // Names made on the fly are rare, but they work.
+        if (!(name instanceof Constant)) {
+            return ctx -> {
+                ctx.step();
+                var type = name.evaluate(ctx);
+                var op = ctx.operations().get(type);
+                if (op == null) {
+                    return "{Unknown operation " + type + "}";
+                }
+
+                return op.apply(ctx, arguments(args, ctx));
+            };
+        }
+
+        var type = ((Constant) name).evaluate();
+        var op = operations.get(type);
+        if (op == null) {
+            return new Constant("{Unknown operation " + type + "}");
+        }
+
+        var constants = new ArrayList<String>(args.length);
+        var allConstant = true;
+        for (var arg : args) {
+            var constant = arg instanceof Constant;
+            constants.add(constant ? ((Constant) arg).evaluate() : null);
+            allConstant &= constant;
+        }
+
+        if (op instanceof CompilableOperation) {
+            op = ((CompilableOperation) op).bind(constants);
+        }
+
+        // Pure operations don't use the context, and give the same result for the same arguments.
+        if (allConstant && pureOperations.contains(type)) {
+            try {
+                return new Constant(op.apply(null, arguments(args, null)));
+            } catch (RuntimeException e) {
+                // Leave it for when it runs, and let it fail there like it always did.
+            }
+        }
+
+        var bound = op;
+        return ctx -> {
+            ctx.step();
+            return bound.apply(ctx, arguments(args, ctx));
+        };
+    }
+
+    @Override
+    public Evaluator visitMulti(MultiNode node, Void context) {
+        // Joins constants that are next to each other, so "a $(x) b c" is three pieces and not four.
+        var pieces = new ArrayList<Evaluator>();
+        StringBuilder constant = null;
+        for (var child : node.children()) {
+            var compiled = child.accept(this, context);
+            if (compiled instanceof Constant) {
+                if (constant == null) {
+                    constant = new StringBuilder();
+                }
+
+                constant.append(((Constant) compiled).evaluate());
+                continue;
+            }
+
+            if (constant != null) {
+                pieces.add(new Constant(constant.toString()));
+                constant = null;
+            }
+
+            pieces.add(compiled);
+        }
+
+        if (constant != null) {
+            pieces.add(new Constant(constant.toString()));
+        }
+
+        if (pieces.isEmpty()) {
+            return new Constant("");
+        }
+
+        if (pieces.size() == 1) {
+            return pieces.get(0);
+        }
+
+        var evaluators = pieces.toArray(new Evaluator[0]);
+        return ctx -> {
+            var sb = new StringBuilder();
+            for (var evaluator : evaluators) {
+                sb.append(evaluator.evaluate(ctx));
+            }
+
+            return sb.toString();
+        };
+    }
+
+    private static String variable(InterpreterContext context, String key) {
+        var value = context.vars().get(key);
+        if (value == null) {
+            return "{Unresolved variable " + key + "}";
+        }
+
+        return value;
+    }
+
+    // Arguments are still lazy: operations like if only evaluate the ones they use.
+    private static List<Operation.Argument> arguments(Evaluator[] args, InterpreterContext context) {
+        var arguments = new Operation.Argument[args.length];
+        for (int i = 0; i < args.length; i++) {
+            var arg = args[i];
+            arguments[i] = arg instanceof Constant ? (Constant) arg : () -> arg.evaluate(context);
+        }
+
+        return Arrays.asList(arguments);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom.v3.interpreter;
+
+/**
+ * A compiled piece of a program.
+ */
+@FunctionalInterface
+interface Evaluator {
+    String evaluate(InterpreterContext context);
+
+    /**
+     * A piece that's always the same: literals, and whatever could be worked out when compiling.
+     * It's also an argument, so operations get it as is.
+     */
+    final class Constant implements Evaluator, Operation.Argument {
+        private final String value;
+
+        Constant(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String evaluate(InterpreterContext context) {
+            return value;
+        }
+
+        @Override
+        public String evaluate() {
+            return value;
+        }
+    }
+}
@@ -23,10 +23,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class InterpreterContext {
+    // Way more than anyone needs: programs can't loop, so this only stops huge ones from taking a command thread for long.
+    private static final int MAX_STEPS = 10_000;
     private final Map<String, Object> custom = new HashMap<>();
     private final Map<String, String> vars;
     private final Map<String, Operation> operations;
     private final Context commandContext;
+    private int steps;
 
     public InterpreterContext(Map<String, String> vars, Map<String, Operation> operations, Context ctx) {
         this.vars = vars;
@@ -46,6 +49,17 @@ public class InterpreterContext {
         return commandContext.getEvent();
     }
 
+    /**
+     * Counts a step of the program (an operation or a variable), and stops it if it's done too many.
+     *
+     * @throws StepLimitException If the program went over the limit.
+     */
+    public void step() {
+        if (++steps > MAX_STEPS) {
+            throw new StepLimitException(MAX_STEPS);
+        }
+    }
+
     public void set(String key, Object value) {
         custom.put(key, value);
     }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom.v3.interpreter;
+
+import net.kodehawa.mantarobot.commands.custom.v3.ast.Node;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compiled CCv3 program: the AST turned into a tree of functions, with the operations already looked up and
+ * constant parts already worked out. Can't be modified, so the same one can run on many threads at once.
+ */
+public final class Program {
+    private final Evaluator root;
+
+    private Program(Evaluator root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles a program.
+     *
+     * @param ast            The parsed program.
+     * @param operations     The operations it can use.
+     * @param pureOperations The operations that don't use the context and always give the same result for the same
+     *                       arguments, so they can be worked out when compiling if all their arguments are constants.
+     * @return The compiled program.
+     */
+    public static Program compile(Node ast, Map<String, Operation> operations, Set<String> pureOperations) {
+        return new Program(ast.accept(new Compiler(operations, pureOperations), null));
+    }
+
+    /**
+     * Runs the program.
+     *
+     * @param context The context to run it on. Should be a new one for every run.
+     * @return What the program outputs.
+     * @throws StepLimitException If it goes over the step limit of the context.
+     */
+    public String run(InterpreterContext context) {
+        return root.evaluate(context);
+    }
+}
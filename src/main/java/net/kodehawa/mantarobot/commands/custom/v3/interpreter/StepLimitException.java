@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom.v3.interpreter;
+
+/**
+ * Thrown when a program goes over the amount of steps it can run for. See {@link InterpreterContext#step()}.
+ */
+public class StepLimitException extends RuntimeException {
+    private static final long serialVersionUID = 1;
+
+    public StepLimitException(int limit) {
+        // No stack trace: these are expected, and thrown from deep inside the program.
+        super("Went over " + limit + " steps", null, false, false);
+    }
+}
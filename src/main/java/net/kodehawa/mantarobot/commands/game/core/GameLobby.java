@@ -16,32 +16,32 @@
 
 package net.kodehawa.mantarobot.commands.game.core;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.commands.interaction.Lobby;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.VirtualThreads;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class GameLobby extends Lobby {
     public static final Map<Long, GameLobby> LOBBYS = new ConcurrentHashMap<>();
-    private static final ExecutorService executorService = Executors.newCachedThreadPool(
-            new ThreadFactoryBuilder()
-                    .setNameFormat("GameLobby-CachedExecutor")
-                    .build()
+    // Bounded: a lobby only needs a thread to start its next game, anything past this can wait its turn.
+    private static final ThreadPoolExecutor executorService = new ThreadPoolExecutor(16, 16, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(), VirtualThreads.factory("GameLobby-Executor-%d")
     );
 
     static {
+        executorService.allowCoreThreadTimeOut(true);
         Metrics.THREAD_POOL_COLLECTOR.add("game-lobbies", executorService);
     }
 
@@ -29,6 +29,7 @@ import net.kodehawa.mantarobot.core.listeners.operations.core.ReactionOperation;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 
@@ -103,12 +104,8 @@ public class Poll extends Lobby {
                 return;
             }
 
-            var dbGuild = MantaroData.db().getGuild(getGuild());
-            var data = dbGuild.getData();
             var at = new AtomicInteger();
-
-            data.setRanPolls(data.getRanPolls() + 1L);
-            dbGuild.saveAsync();
+            var ranPolls = MantaroData.db().incrementAndGet(DBGuild.of(getGuild().getId()), "data.ranPolls", 1L);
 
             var toShow = Stream.of(options)
                     .map(opt -> String.format("#%01d.- %s", at.incrementAndGet(), opt))
@@ -123,7 +120,7 @@ public class Poll extends Lobby {
             var user = ctx.getAuthor();
 
             var builder = new EmbedBuilder().setAuthor(String.format(languageContext.get("commands.poll.header"),
-                    data.getRanPolls(), user.getName()), null, user.getAvatarUrl())
+                    ranPolls, user.getName()), null, user.getAvatarUrl())
                     .setDescription(String.format(languageContext.get("commands.poll.success"), name))
                     .addField(EmoteReference.PENCIL.toHeaderString() + languageContext.get("general.options"),
                             "```md\n" + toShow + "```", false
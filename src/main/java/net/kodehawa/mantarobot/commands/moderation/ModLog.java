@@ -17,17 +17,29 @@
 package net.kodehawa.mantarobot.commands.moderation;
 
 import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.utils.Utils;
 
 public class ModLog {
     private static final ManagedDatabase db = MantaroData.db();
 
+    /**
+     * Bumps the case counter of a guild on the database side, so two moderators can't get the same case number.
+     *
+     * @param guild The guild the action happened in.
+     * @return The new case number.
+     */
+    public static long nextCase(Guild guild) {
+        return db.incrementAndGet(DBGuild.of(guild.getId()), "data.cases", 1);
+    }
+
     public static void log(Member author, User target, String reason,
                            String channel, ModAction action, long caseNumber, int messagesDeleted) {
         var guildDB = db.getGuild(author.getGuild());
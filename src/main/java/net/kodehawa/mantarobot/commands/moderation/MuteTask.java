@@ -83,13 +83,11 @@ public class MuteTask {
                                 guild.removeRoleFromMember(member, roleById).queue();
                             }
 
-                            guildData.setCases(guildData.getCases() + 1);
-                            dbGuild.saveAsync();
                             ModLog.log(guild.getSelfMember(),
                                     member.getUser(),
                                     "Mute timeout expired", "none",
                                     ModLog.ModAction.UNMUTE,
-                                    guildData.getCases()
+                                    ModLog.nextCase(guild)
                             );
                         }
                     }
@@ -37,6 +37,7 @@ import net.kodehawa.mantarobot.commands.music.utils.AudioCmdUtils;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.Lazy;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
 import java.net.InetAddress;
 import java.util.Collections;
@@ -44,15 +45,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class MantaroAudioManager {
-    private static final Lazy<Executor> LOAD_EXECUTOR = new Lazy<>(() -> Executors.newCachedThreadPool(
-            new ThreadFactoryBuilder()
-                    .setNameFormat("AudioLoadThread-%d")
-                    .setDaemon(true)
-                    .build()
-    ));
+    // Bounded, so a burst of searches queues up instead of starting a thread each.
+    private static final Lazy<Executor> LOAD_EXECUTOR = new Lazy<>(() -> {
+        var executor = new ThreadPoolExecutor(16, 16, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("AudioLoadThread-%d")
+                        .setDaemon(true)
+                        .build()
+        );
+
+        executor.allowCoreThreadTimeOut(true);
+        Metrics.THREAD_POOL_COLLECTOR.add("audio-load", executor);
+        return executor;
+    });
 
     private final Map<String, GuildMusicManager> musicManagers;
     private final AudioPlayerManager playerManager;
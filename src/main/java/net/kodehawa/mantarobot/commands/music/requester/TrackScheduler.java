@@ -115,7 +115,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
         }
 
         final var guild = MantaroBot.getInstance().getShardManager().getGuildById(guildId);
-        final var dbGuild = MantaroData.db().getGuild(guildId);
+        final var dbGuild = MantaroData.db().getCachedGuild(guildId);
 
         if (dbGuild.getData().isMusicAnnounce() && requestedChannel != 0 && getRequestedTextChannel() != null) {
             var voiceState = getRequestedTextChannel().getGuild().getSelfMember().getVoiceState();
@@ -21,6 +21,7 @@ import com.rethinkdb.model.OptArgs;
 import com.rethinkdb.utils.Types;
 import net.kodehawa.mantarobot.commands.BirthdayCmd;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.ConnectionPool;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,9 +54,14 @@ public class BirthdayCacher {
     public void cache() {
         executorService.submit(() -> {
             try {
-                List<Map<Object, Object>> m = r.table("users")
-                        .run(MantaroData.conn(), OptArgs.of("read_mode", "outdated"), Types.mapOf(Object.class, Object.class))
-                        .toList();
+                List<Map<Object, Object>> m;
+                // Full table scan: keep it away from the connections used for normal lookups.
+                try (var lease = MantaroData.pool().acquire(ConnectionPool.Lane.BULK)) {
+                    m = r.table("users")
+                            .run(lease.connection(), OptArgs.of("read_mode", "outdated"), Types.mapOf(Object.class, Object.class))
+                            .toList();
+                }
+
                 cachedBirthdays.clear();
 
                 for (Map<Object, Object> r : m) {
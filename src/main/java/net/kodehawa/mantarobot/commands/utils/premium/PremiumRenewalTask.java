@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.utils.premium;
+
+import net.dv8tion.jda.api.entities.User;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renews premium keys that are about to expire, and warns their owners if they can't be renewed.
+ * This used to be done on every command ran, which meant three extra database lookups per command.
+ */
+public class PremiumRenewalTask {
+    private static final Logger log = LoggerFactory.getLogger(PremiumRenewalTask.class);
+
+    public static void handle() {
+        log.debug("Checking premium keys about to expire...");
+        try {
+            var db = MantaroData.db();
+            var renewed = 0;
+
+            for (var key : db.getPremiumKeys()) {
+                // 10 days before expiration or best fit.
+                if (!key.isEnabled() || key.validFor() > 10 || key.validFor() <= 1) {
+                    continue;
+                }
+
+                try {
+                    // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
+                    if (key.renew()) {
+                        renewed++;
+                        continue;
+                    }
+
+                    if (key.getParsedType() == PremiumKey.Type.USER) {
+                        warnExpiration(key);
+                    }
+                } catch (Exception e) {
+                    log.error("Error while checking premium key {}", key.getId(), e);
+                }
+            }
+
+            log.debug("Renewed {} premium keys", renewed);
+        } catch (Exception e) {
+            log.error("Error while checking premium keys", e);
+        }
+    }
+
+    private static void warnExpiration(PremiumKey key) {
+        var dbUser = MantaroData.db().getUser(key.getOwner());
+        var userData = dbUser.getData();
+        if (userData.hasReceivedExpirationWarning()) {
+            return;
+        }
+
+        MantaroBot.getInstance().getShardManager()
+                .retrieveUserById(key.getOwner())
+                .flatMap(User::openPrivateChannel)
+                .flatMap(privateChannel -> privateChannel.sendMessage(
+                        """
+                        %1$sYour premium key is about to expire in **%2$,d** days**!
+                        :heart: *If you're still pledging to Mantaro* you can ask Kodehawa#3457 for a key renewal in the #donators channel.*
+                        In the case that you're not longer a patron, you cannot renew, but I sincerely hope you had a good time with the bot and its features!
+                        **If you ever want to pledge again you can check the patreon link at <https://patreon.com/mantaro>**
+
+                        Thanks you so much for your support to keep Mantaro alive! It wouldn't be possible without the help of all of you.
+                        With love, Kodehawa and the Mantaro team :heart:
+
+                        This will only be sent once (hopefully). Thanks again!
+                        """.formatted(EmoteReference.WARNING, Math.max(1, key.validFor()))
+                )).queue(success -> { }, failure -> { });
+
+        userData.setReceivedExpirationWarning(true);
+        dbUser.saveUpdating();
+    }
+}
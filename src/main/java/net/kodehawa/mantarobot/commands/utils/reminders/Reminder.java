@@ -18,6 +18,7 @@ package net.kodehawa.mantarobot.commands.utils.reminders;
 
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.DBUser;
 import org.json.JSONObject;
 import redis.clients.jedis.JedisPool;
 
@@ -59,14 +60,12 @@ public class Reminder {
         }
 
         var user = db.getUser(userId);
-        var data = user.getData();
-        data.getReminders().remove(fullId);
+        user.getData().getReminders().remove(fullId);
+        user.save();
 
         if (reason == CancelReason.REMINDED) {
-            data.incrementReminders();
+            db.increment(DBUser.of(userId), "data.remindedTimes", 1L);
         }
-
-        user.save();
     }
 
     public void schedule() {
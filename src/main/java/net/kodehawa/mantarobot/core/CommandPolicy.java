@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core;
+
+import net.dv8tion.jda.api.entities.Member;
+import net.kodehawa.mantarobot.core.CommandRegistry.CommandDisableLevel;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * The command disable rules of a guild, compiled out of its {@link GuildCommandConfig} so checking a command
+ * is a handful of lookups: ids are kept as sorted long arrays and categories as bitmasks.
+ * It's built along with the (cached) config, so it only gets rebuilt when the guild changes.
+ */
+public final class CommandPolicy {
+    private static final long[] NO_IDS = new long[0];
+
+    private final Set<String> disabledCommands;
+    private final long disabledCategories;
+    private final long[] disabledChannels;
+    private final long[] disabledUsers;
+    private final long[] disabledRoles;
+    private final long whitelistedRole;
+    private final Rules channelRules;
+    private final Rules roleRules;
+
+    private CommandPolicy(GuildCommandConfig config) {
+        this.disabledCommands = names(config.getDisabledCommands());
+        this.disabledCategories = mask(config.getDisabledCategories());
+        this.disabledChannels = ids(config.getDisabledChannels());
+        this.disabledUsers = ids(config.getDisabledUsers());
+        this.disabledRoles = ids(config.getDisabledRoles());
+        this.whitelistedRole = config.getWhitelistedRole() == null ? 0 : parseId(config.getWhitelistedRole());
+        this.channelRules = new Rules(config.getChannelSpecificDisabledCommands(), config.getChannelSpecificDisabledCategories());
+        this.roleRules = new Rules(config.getRoleSpecificDisabledCommands(), config.getRoleSpecificDisabledCategories());
+    }
+
+    public static CommandPolicy compile(@Nonnull GuildCommandConfig config) {
+        return new CommandPolicy(config);
+    }
+
+    /**
+     * Checks whether a member can run a command on a channel.
+     * Rules are checked in the same order they always were, so the reason given is the same.
+     *
+     * @param member      The member trying to run the command.
+     * @param channelId   The channel the command was ran on.
+     * @param commandName The name of the command (the original name, for aliases).
+     * @param category    The category of the command, if it has one.
+     * @param isOptions   Whether this is the opts command, which can't be disabled by channel or category.
+     * @return {@link CommandDisableLevel#NONE} if the command can run, or why it can't.
+     */
+    @Nonnull
+    public CommandDisableLevel check(@Nonnull Member member, long channelId, @Nonnull String commandName,
+                                     @Nullable CommandCategory category, boolean isOptions) {
+        if (disabledCommands.contains(commandName)) {
+            return CommandDisableLevel.COMMAND;
+        }
+
+        var channel = channelRules.indexOf(channelId);
+        if (channel >= 0 && channelRules.commands.get(channel).contains(commandName)) {
+            return CommandDisableLevel.COMMAND_SPECIFIC;
+        }
+
+        if (contains(disabledUsers, member.getIdLong()) && !isAdmin(member)) {
+            return CommandDisableLevel.USER;
+        }
+
+        if (!isOptions) {
+            if (contains(disabledChannels, channelId)) {
+                return CommandDisableLevel.CHANNEL;
+            }
+
+            var categoryMask = mask(category);
+            if ((disabledCategories & categoryMask) != 0) {
+                return CommandDisableLevel.CATEGORY;
+            }
+
+            if (channel >= 0 && (channelRules.categories[channel] & categoryMask) != 0) {
+                return CommandDisableLevel.SPECIFIC_CATEGORY;
+            }
+        }
+
+        // Listing the roles of a member makes a new list, so don't unless there's something to check them against.
+        if (whitelistedRole == 0 && disabledRoles.length == 0 && roleRules.isEmpty()) {
+            return CommandDisableLevel.NONE;
+        }
+
+        var whitelisted = whitelistedRole == 0;
+        var disabledRole = false;
+        var roleCommand = false;
+        var roleCategory = false;
+        var categoryMask = mask(category);
+        for (var role : member.getRoles()) {
+            var id = role.getIdLong();
+            whitelisted |= id == whitelistedRole;
+            disabledRole |= contains(disabledRoles, id);
+
+            var index = roleRules.indexOf(id);
+            if (index >= 0) {
+                roleCommand |= roleRules.commands.get(index).contains(commandName);
+                roleCategory |= (roleRules.categories[index] & categoryMask) != 0;
+            }
+        }
+
+        CommandDisableLevel level;
+        // A whitelisted role that got deleted doesn't count.
+        if (!whitelisted && member.getGuild().getRoleById(whitelistedRole) != null) {
+            level = CommandDisableLevel.NOT_WHITELISTED;
+        } else if (disabledRole) {
+            level = CommandDisableLevel.ROLE;
+        } else if (roleCommand) {
+            level = CommandDisableLevel.SPECIFIC_ROLE;
+        } else if (roleCategory) {
+            level = CommandDisableLevel.SPECIFIC_ROLE_CATEGORY;
+        } else {
+            return CommandDisableLevel.NONE;
+        }
+
+        // Administrators bypass all role rules.
+        return isAdmin(member) ? CommandDisableLevel.NONE : level;
+    }
+
+    /**
+     * Checks whether a custom command is disabled for a member on a channel.
+     * Custom commands have no category, and only the command rules apply to them.
+     *
+     * @param member      The member trying to run the command.
+     * @param channelId   The channel the command was ran on.
+     * @param commandName The name of the custom command.
+     * @return Whether the command is disabled.
+     */
+    public boolean isCustomCommandDisabled(@Nonnull Member member, long channelId, @Nonnull String commandName) {
+        if (disabledCommands.contains(commandName)) {
+            return true;
+        }
+
+        var channel = channelRules.indexOf(channelId);
+        if (channel >= 0 && channelRules.commands.get(channel).contains(commandName)) {
+            return true;
+        }
+
+        if (roleRules.isEmpty()) {
+            return false;
+        }
+
+        for (var role : member.getRoles()) {
+            var index = roleRules.indexOf(role.getIdLong());
+            if (index >= 0 && roleRules.commands.get(index).contains(commandName)) {
+                return !isAdmin(member);
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isAdmin(Member member) {
+        return CommandPermission.ADMIN.test(member);
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        return ids.length != 0 && Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    private static long mask(@Nullable CommandCategory category) {
+        return category == null ? 0 : 1L << category.ordinal();
+    }
+
+    private static long mask(@Nullable Collection<CommandCategory> categories) {
+        var mask = 0L;
+        if (categories != null) {
+            for (var category : categories) {
+                mask |= mask(category);
+            }
+        }
+
+        return mask;
+    }
+
+    private static Set<String> names(Collection<String> names) {
+        var set = new HashSet<>(names);
+        set.remove(null);
+        return Set.copyOf(set);
+    }
+
+    private static long[] ids(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return NO_IDS;
+        }
+
+        return ids.stream()
+                .filter(Objects::nonNull)
+                .mapToLong(CommandPolicy::parseId)
+                .filter(id -> id != 0)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    // Whatever isn't a snowflake can't match anything: 0 is never a valid id.
+    private static long parseId(String id) {
+        try {
+            return Long.parseUnsignedLong(id);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Channel or role specific rules: sorted ids, with the disabled commands and categories of each at the same index.
+     */
+    private static final class Rules {
+        private final long[] ids;
+        private final List<Set<String>> commands;
+        private final long[] categories;
+
+        private Rules(Map<String, List<String>> disabledCommands, Map<String, List<CommandCategory>> disabledCategories) {
+            var rules = new TreeMap<Long, Map.Entry<Set<String>, Long>>();
+            disabledCommands.forEach((id, commands) -> {
+                var parsed = parseId(id);
+                if (parsed != 0 && commands != null && !commands.isEmpty()) {
+                    rules.merge(parsed, Map.entry(names(commands), 0L), Rules::merge);
+                }
+            });
+
+            disabledCategories.forEach((id, categories) -> {
+                var parsed = parseId(id);
+                var mask = mask(categories);
+                if (parsed != 0 && mask != 0) {
+                    rules.merge(parsed, Map.entry(Set.of(), mask), Rules::merge);
+                }
+            });
+
+            this.ids = new long[rules.size()];
+            this.commands = new ArrayList<>(rules.size());
+            this.categories = new long[rules.size()];
+
+            var i = 0;
+            for (var entry : rules.entrySet()) {
+                ids[i] = entry.getKey();
+                commands.add(entry.getValue().getKey());
+                categories[i] = entry.getValue().getValue();
+                i++;
+            }
+        }
+
+        private static Map.Entry<Set<String>, Long> merge(Map.Entry<Set<String>, Long> a, Map.Entry<Set<String>, Long> b) {
+            var commands = new HashSet<>(a.getKey());
+            commands.addAll(b.getKey());
+            return Map.entry(Set.copyOf(commands), a.getValue() | b.getValue());
+        }
+
+        private boolean isEmpty() {
+            return ids.length == 0;
+        }
+
+        private int indexOf(long id) {
+            return ids.length == 0 ? -1 : Arrays.binarySearch(ids, id);
+        }
+    }
+}
@@ -17,7 +17,6 @@
 package net.kodehawa.mantarobot.core;
 
 import com.google.common.base.Preconditions;
-import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.commands.CustomCmds;
 import net.kodehawa.mantarobot.commands.info.stats.CategoryStatsManager;
@@ -35,8 +34,7 @@ import net.kodehawa.mantarobot.core.modules.commands.help.HelpContent;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.db.entities.DBGuild;
-import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
 import net.kodehawa.mantarobot.options.core.Option;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
@@ -45,7 +43,6 @@ import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -78,16 +75,15 @@ public class CommandRegistry {
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
-    public void process(GuildMessageReceivedEvent event, DBGuild dbGuild, String cmdName, String content, String prefix, boolean isMention) {
+    public void process(GuildMessageReceivedEvent event, GuildCommandConfig guildConfig, String cmdName, String content, String prefix, boolean isMention) {
         final var managedDatabase = MantaroData.db();
         final var start = System.currentTimeMillis();
 
         var command = commands.get(cmdName.toLowerCase());
-        var guildData = dbGuild.getData();
 
         if (command == null) {
             // We will create a proper I18nContext once the custom command goes through, if it does. We don't need it otherwise.
-            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(), content, isMention), guildData, content);
+            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(), content, isMention), guildConfig, content);
             return;
         }
 
@@ -96,14 +92,14 @@ public class CommandRegistry {
         // Variable used in lambda expression should be final or effectively final...
         final var cmd = command;
         final var guild = event.getGuild();
-        final var mantaroData = managedDatabase.getMantaroData();
+        final var blacklist = managedDatabase.getBlacklist();
 
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+        if (blacklist.isGuildBlacklisted(guild.getIdLong())) {
             log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
             return;
         }
 
-        if (mantaroData.getBlackListedUsers().contains(author.getId())) {
+        if (blacklist.isUserBlacklisted(author.getIdLong())) {
             if (!rl.process(author)) {
                 return;
             }
@@ -116,72 +112,26 @@ public class CommandRegistry {
             return;
         }
 
-        // !! Permission check start
-        if (guildData.getDisabledCommands().contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.COMMAND);
-            return;
-        }
+        // Nothing below needs the user until the command runs, so start fetching it now.
+        final var userFuture = managedDatabase.getUserAsync(author.getId());
 
+        // !! Permission check start
         final var member = event.getMember();
-        final var roles = member.getRoles();
-        final var channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(channel.getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.COMMAND_SPECIFIC);
-            return;
-        }
-
-        if (guildData.getDisabledUsers().contains(author.getId()) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.USER);
-            return;
-        }
-
-        var isOptions = cmdName.equalsIgnoreCase("opts");
-        if (guildData.getDisabledChannels().contains(channel.getId()) && !isOptions) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.CHANNEL);
-            return;
-        }
-
-        if (guildData.getDisabledCategories().contains(root(cmd).category()) && !isOptions) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.CATEGORY);
-            return;
-        }
-
-        if (guildData.getChannelSpecificDisabledCategories().computeIfAbsent(
-                channel.getId(), c -> new ArrayList<>()).contains(root(cmd).category()) && !isOptions) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_CATEGORY);
-            return;
-        }
-
-        if (guildData.getWhitelistedRole() != null && isNotAdmin(member)) {
-            var whitelistedRole = guild.getRoleById(guildData.getWhitelistedRole());
-            if (whitelistedRole != null && roles.stream().noneMatch(r -> whitelistedRole.getId().equals(r.getId()))) {
-                return;
-            }
-            // else continue.
-        }
-
-        if (!guildData.getDisabledRoles().isEmpty() && roles.stream().anyMatch(
-                r -> guildData.getDisabledRoles().contains(r.getId())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.ROLE);
-            return;
-        }
+        final var level = guildConfig.getPolicy().check(
+                member, channel.getIdLong(), name(cmd, cmdName), root(cmd).category(), cmdName.equalsIgnoreCase("opts")
+        );
 
-        final var roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(name(cmd, cmdName))) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_ROLE);
+        if (level == CommandDisableLevel.NOT_WHITELISTED) {
             return;
         }
 
-        final var roleSpecificDisabledCategories = guildData.getRoleSpecificDisabledCategories();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(root(cmd).category())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
+        if (level != CommandDisableLevel.NONE) {
+            sendDisabledNotice(event, guildConfig, level);
             return;
         }
 
         // If we are in the patreon bot, deny all requests from unknown guilds.
-        if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
+        if (config.isPremiumBot() && !config.isOwner(author) && !managedDatabase.getPremiumCache().isGuildPremium(guild.getId())) {
             channel.sendMessage("""
                             :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
                             **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
@@ -197,48 +147,15 @@ public class CommandRegistry {
         }
         // !! Permission check end
 
-        final var dbUser = managedDatabase.getUser(author);
-        final var userData = dbUser.getData();
-        final var currentKey = managedDatabase.getPremiumKey(userData.getPremiumKey());
-        final var guildKey = managedDatabase.getPremiumKey(guildData.getPremiumKey());
-        if (currentKey != null) {
-            // 10 days before expiration or best fit.
-            if (currentKey.validFor() <= 10 && currentKey.validFor() > 1) {
-                // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-                if (!currentKey.renew() && !userData.hasReceivedExpirationWarning()) {
-                    author.openPrivateChannel().queue(privateChannel ->
-                            privateChannel.sendMessage(
-                                """
-                                %1$sYour premium key is about to expire in **%2$,d** days**!
-                                :heart: *If you're still pledging to Mantaro* you can ask Kodehawa#3457 for a key renewal in the #donators channel.*
-                                In the case that you're not longer a patron, you cannot renew, but I sincerely hope you had a good time with the bot and its features!
-                                **If you ever want to pledge again you can check the patreon link at <https://patreon.com/mantaro>**
-                                
-                                Thanks you so much for your support to keep Mantaro alive! It wouldn't be possible without the help of all of you.
-                                With love, Kodehawa and the Mantaro team :heart:
-                                
-                                This will only be sent once (hopefully). Thanks again!
-                                """.formatted(EmoteReference.WARNING, Math.max(1, currentKey.validFor()))
-                            ).queue()
-                    );
-                }
-
-                userData.setReceivedExpirationWarning(true);
-                dbUser.saveUpdating();
-            }
-        }
-
-        // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-        if (guildKey != null && guildKey.validFor() <= 10 && guildKey.validFor() > 1) {
-            guildKey.renew();
-        }
+        // Key renewals and expiration warnings are handled by PremiumRenewalTask, not here.
+        final var userData = userFuture.join().getData();
 
         // Used a command on the new system?
         // sort-of-fix: remove if statement when we port all commands
         boolean executedNew;
         try {
             executedNew = newCommands.execute(new NewContext(event.getMessage(),
-                    new I18nContext(guildData, userData),
+                    new I18nContext(guildConfig.getLang(), userData),
                     event.getMessage().getContentRaw().substring(prefix.length()))
             );
         } catch (ArgumentParseError e) {
@@ -255,7 +172,7 @@ public class CommandRegistry {
         }
 
         if (!executedNew) {
-            cmd.run(new Context(event, new I18nContext(guildData, userData), content, isMention), cmdName, content);
+            cmd.run(new Context(event, new I18nContext(guildConfig.getLang(), userData), content, isMention), cmdName, content);
         }
 
         log.debug("!! COMMAND INVOKE: command:{}, user:{} ({}), guild:{}, channel:{}",
@@ -300,11 +217,7 @@ public class CommandRegistry {
         register(alias, new AliasCommand(alias, command, parent));
     }
 
-    private boolean isNotAdmin(Member member) {
-        return !CommandPermission.ADMIN.test(member);
-    }
-
-    public void sendDisabledNotice(GuildMessageReceivedEvent event, GuildData data, CommandDisableLevel level) {
+    public void sendDisabledNotice(GuildMessageReceivedEvent event, GuildCommandConfig data, CommandDisableLevel level) {
         if (data.isCommandWarningDisplay() && level != CommandDisableLevel.NONE) {
             event.getChannel().sendMessageFormat("%sThis command is disabled on this server. Reason: %s",
                     EmoteReference.ERROR, Utils.capitalize(level.getName())
@@ -390,7 +303,7 @@ public class CommandRegistry {
         }
     }
 
-    enum CommandDisableLevel {
+    public enum CommandDisableLevel {
         NONE("None"),
         CATEGORY("Disabled category on server"),
         SPECIFIC_CATEGORY("Disabled category on specific channel"),
@@ -402,7 +315,9 @@ public class CommandRegistry {
         SPECIFIC_ROLE("Disabled role for this command in this server"),
         SPECIFIC_ROLE_CATEGORY("Disabled role for this category in this server"),
         CHANNEL("Disabled channel"),
-        USER("Disabled user");
+        USER("Disabled user"),
+        // Not sent: members without the whitelisted role are ignored.
+        NOT_WHITELISTED("Not whitelisted");
 
         final String name;
 
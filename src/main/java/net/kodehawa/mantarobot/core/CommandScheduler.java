@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core;
+
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs commands and listener work on a fixed amount of threads, taking turns between guilds.
+ * Every guild gets its own queue, and the threads go through the guilds with something queued round-robin,
+ * so one guild spamming commands only slows down itself.
+ *
+ * <p>What can be queued is bounded in total, per guild and per user. Once a limit is hit, {@link #submit} returns false
+ * and it's up to the caller to tell the user the bot is busy. Non-essential work (experience, logs) is dropped way before
+ * that, as soon as the queue is half full. See {@link #isBusy()}.
+ */
+public class CommandScheduler {
+    private final String name;
+    private final int capacity;
+    private final int perGuild;
+    private final int perUser;
+    private final ThreadPoolExecutor executor;
+
+    // All of these are guarded by this.
+    private final Map<Long, Lane> lanes = new HashMap<>();
+    private final ArrayDeque<Lane> ready = new ArrayDeque<>();
+    private final Map<Long, Integer> queuedPerUser = new HashMap<>();
+    private int queued;
+
+    /**
+     * Creates a new scheduler, and registers it on the thread pool metrics.
+     *
+     * @param name          The name of this scheduler, used for the metrics.
+     * @param threadFactory The factory for the threads that run the tasks.
+     * @param parallelism   How many tasks can run at once.
+     * @param capacity      How many tasks can be queued in total.
+     * @param perGuild      How many tasks a single guild can have queued.
+     * @param perUser       How many tasks a single user can have queued.
+     */
+    public CommandScheduler(String name, ThreadFactory threadFactory, int parallelism, int capacity, int perGuild, int perUser) {
+        this.name = name;
+        this.capacity = capacity;
+        this.perGuild = perGuild;
+        this.perUser = perUser;
+        // The queue here only holds "run the next task" tickets: one per task we accepted, so it's bounded by capacity.
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), threadFactory);
+
+        this.executor.allowCoreThreadTimeOut(true);
+        Metrics.THREAD_POOL_COLLECTOR.add(name, executor);
+    }
+
+    /**
+     * Queues a task that should run unless the bot is overloaded, like a command.
+     *
+     * @param guildId The guild the task comes from, or 0 if none.
+     * @param userId  The user the task comes from, or 0 if none (then it doesn't count for any user).
+     * @param task    The task.
+     * @return Whether the task got queued. If it didn't, it won't run.
+     */
+    public boolean submit(long guildId, long userId, @Nonnull Runnable task) {
+        return enqueue(guildId, userId, task, capacity);
+    }
+
+    /**
+     * Queues a task that can be skipped when we're busy, like giving out experience or logging.
+     *
+     * @param guildId The guild the task comes from, or 0 if none.
+     * @param task    The task.
+     * @return Whether the task got queued. If it didn't, it won't run.
+     */
+    public boolean submitOptional(long guildId, @Nonnull Runnable task) {
+        return enqueue(guildId, 0, task, capacity / 2);
+    }
+
+    /**
+     * Whether the queue is full enough that non-essential work should be skipped.
+     *
+     * @return True if the queue is at least half full.
+     */
+    public synchronized boolean isBusy() {
+        return queued >= capacity / 2;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private boolean enqueue(long guildId, long userId, Runnable task, int limit) {
+        synchronized (this) {
+            if (queued >= limit) {
+                return reject(limit == capacity ? "capacity" : "busy");
+            }
+
+            var lane = lanes.get(guildId);
+            if (lane != null && lane.tasks.size() >= perGuild) {
+                return reject("guild");
+            }
+
+            if (userId != 0) {
+                var userQueued = queuedPerUser.getOrDefault(userId, 0);
+                if (userQueued >= perUser) {
+                    return reject("user");
+                }
+
+                queuedPerUser.put(userId, userQueued + 1);
+            }
+
+            if (lane == null) {
+                lane = new Lane(guildId);
+                lanes.put(guildId, lane);
+                ready.add(lane);
+            }
+
+            lane.tasks.add(new Task(userId, task));
+            queued++;
+        }
+
+        executor.execute(this::runNext);
+        return true;
+    }
+
+    private boolean reject(String reason) {
+        Metrics.EXECUTOR_REJECTIONS.labels(name, reason).inc();
+        return false;
+    }
+
+    private void runNext() {
+        Task task;
+        synchronized (this) {
+            // There's a ticket for every task, and tickets are only made after their task is queued, so this is never empty.
+            var lane = ready.poll();
+            if (lane == null) {
+                return;
+            }
+
+            task = lane.tasks.poll();
+            if (lane.tasks.isEmpty()) {
+                lanes.remove(lane.guildId);
+            } else {
+                // Back to the end of the line: everyone else gets a turn first.
+                ready.add(lane);
+            }
+
+            queued--;
+            if (task.userId != 0) {
+                queuedPerUser.computeIfPresent(task.userId, (id, count) -> count == 1 ? null : count - 1);
+            }
+        }
+
+        Metrics.EXECUTOR_QUEUE_WAIT.labels(name).observe(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.queuedAt));
+        task.runnable.run();
+    }
+
+    private static class Lane {
+        private final long guildId;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+
+        private Lane(long guildId) {
+            this.guildId = guildId;
+        }
+    }
+
+    private static class Task {
+        private final long userId;
+        private final Runnable runnable;
+        private final long queuedAt = System.nanoTime();
+
+        private Task(long userId, Runnable runnable) {
+            this.userId = userId;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -52,7 +52,7 @@ import net.kodehawa.mantarobot.log.LogUtils;
 import net.kodehawa.mantarobot.options.annotations.Option;
 import net.kodehawa.mantarobot.options.event.OptionRegistryEvent;
 import net.kodehawa.mantarobot.utils.Utils;
-import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import net.kodehawa.mantarobot.utils.VirtualThreads;
 import net.kodehawa.mantarobot.utils.external.BotListPost;
 import okhttp3.Request;
 import org.json.JSONObject;
@@ -77,21 +77,28 @@ public class MantaroCore {
 
     private static LoadState loadState = PRELOAD;
     private final Map<Integer, Shard> shards = new ConcurrentHashMap<>();
-    private final ExecutorService threadPool = Executors.newCachedThreadPool(
-            new ThreadFactoryBuilder().setNameFormat("Mantaro Thread-%d").build()
-    );
+    private final CommandScheduler scheduler;
     private final Config config;
     private final boolean isDebug;
     private String commandsPackage;
     private String optsPackage;
-    private final CommandProcessor commandProcessor = new CommandProcessor();
+    private final CommandProcessor commandProcessor;
     private EventBus shardEventBus;
     private ShardManager shardManager;
 
     public MantaroCore(Config config, boolean isDebug) {
         this.config = config;
         this.isDebug = isDebug;
-        Metrics.THREAD_POOL_COLLECTOR.add("mantaro-executor", threadPool);
+        if (config.isUseVirtualThreads() && !VirtualThreads.isSupported()) {
+            log.warn("Virtual threads are enabled, but this JDK doesn't have them. Using platform threads.");
+        }
+
+        // Virtual threads are cheap, and commands spend most of their time waiting: we can run way more of them at once.
+        var parallelism = VirtualThreads.isEnabled() ? config.getVirtualCommandThreads() : config.getCommandThreads();
+        this.scheduler = new CommandScheduler("mantaro-executor", VirtualThreads.factory("Mantaro Thread-%d"),
+                parallelism, config.getCommandQueueSize(), config.getCommandQueuePerGuild(), config.getCommandQueuePerUser()
+        );
+        this.commandProcessor = new CommandProcessor(scheduler);
     }
 
 
@@ -212,8 +219,8 @@ public class MantaroCore {
                             shardStartListener
                     )
                     .addEventListenerProviders(List.of(
-                            id -> new CommandListener(commandProcessor, threadPool, getShard(id).getMessageCache()),
-                            id -> new MantaroListener(threadPool, getShard(id).getMessageCache()),
+                            id -> new CommandListener(commandProcessor, scheduler, getShard(id).getMessageCache()),
+                            id -> new MantaroListener(scheduler, getShard(id).getMessageCache()),
                             id -> getShard(id).getListener()
                     ))
                     .setEventManagerProvider(id -> getShard(id).getManager())
@@ -299,7 +306,8 @@ public class MantaroCore {
             this.shardManager = shardManager.build();
 
             //This is so it doesn't block command registering, lol.
-            threadPool.submit(() -> {
+            // Not on the scheduler: this waits for all shards, and would hold a command thread for that long.
+            new Thread(() -> {
                 log.info("CountdownLatch started: Awaiting for {} shards to be counted down to start PostLoad.", latchCount);
 
                 try {
@@ -312,7 +320,7 @@ public class MantaroCore {
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
-            });
+            }, "Mantaro PostLoad-Wait").start();
         } catch (LoginException e) {
             throw new IllegalStateException(e);
         }
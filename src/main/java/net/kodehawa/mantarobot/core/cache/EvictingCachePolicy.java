@@ -24,12 +24,15 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 public class EvictingCachePolicy implements MemberCachePolicy {
     private static final Logger log = LoggerFactory.getLogger(EvictingCachePolicy.class);
     
     private final EvictionStrategy[] strategies;
+    // One per strategy. Locks and not synchronized, so this never pins a carrier if it gets called from a virtual thread.
+    private final ReentrantLock[] locks;
     
     public EvictingCachePolicy(List<Integer> shardIds, Supplier<EvictionStrategy> strategySupplier) {
         var strategy = new EvictionStrategy[Collections.max(shardIds) + 1];
@@ -39,6 +42,10 @@ public class EvictingCachePolicy implements MemberCachePolicy {
         }
 
         this.strategies = strategy;
+        this.locks = new ReentrantLock[strategy.length];
+        for (var id : shardIds) {
+            locks[id] = new ReentrantLock();
+        }
     }
     
     @Override
@@ -58,9 +65,12 @@ public class EvictingCachePolicy implements MemberCachePolicy {
             return true;
         }
 
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized(strategy) {
+        var lock = locks[shard];
+        lock.lock();
+        try {
             evict = strategy.cache(member.getIdLong());
+        } finally {
+            lock.unlock();
         }
 
         // The strategy contains only members that were added to this shard
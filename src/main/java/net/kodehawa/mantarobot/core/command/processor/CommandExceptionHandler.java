@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import com.rethinkdb.gen.exc.ReqlError;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.exceptions.PermissionException;
+import net.kodehawa.mantarobot.commands.currency.profile.Badge;
+import net.kodehawa.mantarobot.data.I18n;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.LanguageKeyNotFoundException;
+import net.kodehawa.mantarobot.utils.Snow64;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IllegalFormatException;
+
+/**
+ * Tells the user (and the logs) about a command that blew up. Commands don't always run on the thread that got
+ * the message (they can wait on the user's mailbox), so this is used wherever they end up running.
+ */
+public final class CommandExceptionHandler {
+    private static final Logger log = LoggerFactory.getLogger(CommandExceptionHandler.class);
+
+    private CommandExceptionHandler() { }
+
+    public static void handle(GuildMessageReceivedEvent event, Exception exception) {
+        try {
+            throw exception;
+        } catch (IllegalFormatException e) {
+            var id = Snow64.toSnow64(event.getMessage().getIdLong());
+            event.getChannel().sendMessageFormat(
+                    "%sWe found at error when trying to format a String. Please report on the support server (At <https://support.mantaro.site>) with error ID `%s` (On Shard %s)",
+                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId()
+            ).queue();
+
+            log.warn("Wrong String format. Check this. ID: {}", id, e);
+        } catch (IndexOutOfBoundsException e) {
+            var id = Snow64.toSnow64(event.getMessage().getIdLong());
+            event.getChannel().sendMessageFormat(
+                    "%sYour query returned no results or you used the incorrect arguments, seemingly (Error ID: `%s`): Shard %s. Just in case, check command help!",
+                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId()
+            ).queue();
+
+            log.warn("Exception caught and alternate message sent. We should look into this, anyway (ID: {})", id, e);
+        } catch (PermissionException e) {
+            if (e.getPermission() != Permission.UNKNOWN) {
+                event.getChannel().sendMessageFormat(
+                        "%sI don't have permission to do this :(\nI need the permission: **%s**",
+                        EmoteReference.ERROR, e.getPermission().getName()
+                ).queue();
+            } else {
+                event.getChannel().sendMessage(
+                        EmoteReference.ERROR +
+                        "I cannot perform this action due to the lack of permission! Is the role I might be trying to assign " +
+                        "higher than my role? Do I have the correct permissions/hierarchy to perform this action?"
+                ).queue();
+            }
+        } catch (LanguageKeyNotFoundException e) {
+            var id = Snow64.toSnow64(event.getMessage().getIdLong());
+            event.getChannel().sendMessageFormat(
+                    "%sWrong I18n key found, please report on the support server (At <https://support.mantaro.site>) with error ID `%s` (On Shard %s).\n%sMessage: *%s*",
+                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId(),
+                    EmoteReference.ZAP, e.getMessage()
+            ).queue();
+
+            log.warn("Missing i18n key. Check this. ID: {}", id, e);
+        } catch (IllegalArgumentException e) { //NumberFormatException == IllegalArgumentException
+            var id = Snow64.toSnow64(event.getMessage().getIdLong());
+            event.getChannel().sendMessageFormat(
+                    "%sI think you forgot something on the floor. (Error ID: `%s`): Shard %s\n" +
+                    "%sCould be an internal error, but check the command arguments or maybe the message I'm trying to send exceeds 2048 characters, " +
+                    "Just in case, check command help! (If you need further help, go to <https://support.mantaro.site>)",
+                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId(), EmoteReference.WARNING
+            ).queue();
+
+            log.warn("Exception caught and alternate message sent. We should look into this, anyway (ID: {})", id, e);
+        } catch (ReqlError e) {
+            // So much just went wrong...
+            e.printStackTrace();
+        } catch (Exception e) {
+            var context = I18n.of(event.getGuild());
+            var id = Snow64.toSnow64(event.getMessage().getIdLong());
+            var player = MantaroData.db().getPlayer(event.getAuthor());
+
+            event.getChannel().sendMessageFormat(
+                    "%s%s (Unexpected error, ID: `%s`): Shard %s\n%s",
+                    EmoteReference.ERROR, context.get("general.boom_quotes"), id,
+                    event.getJDA().getShardInfo().getShardId(), context.get("general.generic_error")
+            ).queue();
+
+            if (player.getData().addBadgeIfAbsent(Badge.FIRE)) {
+                player.saveUpdating();
+            }
+
+            log.error("Error happened on command: {} (Error ID: {})", event.getMessage().getContentRaw(), id, e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.ExtraRuntimeOptions;
+import net.kodehawa.mantarobot.core.CommandScheduler;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One mailbox per user with a command running: their commands run one after the other, in the order
+ * they came in, so two of them never load and save the same player at once. Commands from different users don't
+ * share anything, and run in parallel.
+ *
+ * <p>Nothing here blocks a thread. A command that comes in while another one of the same user is running is left on the
+ * mailbox, and when the running one is done the next one is submitted to the scheduler again, waiting in line
+ * like everything else.
+ *
+ * <p>When this node only has part of the shards, another node could be running a command for the same user too.
+ * Each command marks the user as present on this node on redis, in the same round trip that takes the lease on them.
+ * The lease is only released (a second round trip) once the user was seen on more than one node: otherwise it's
+ * left to expire, or taken over by this node's next command. If another node holds it, the command is retried a bit
+ * later without holding a thread, and given up on (telling the user) if it doesn't free up in time.
+ */
+class CommandMailbox {
+    private static final Logger log = LoggerFactory.getLogger(CommandMailbox.class);
+    private static final String PRESENCE_PREFIX = "command-presence-";
+    private static final String LEASE_PREFIX = "command-lease-";
+    private static final long PRESENCE_MILLIS = 30_000;
+    private static final long LEASE_MILLIS = 5_000;
+    // Longer than a lease, so one that's never released still frees up before we give up.
+    private static final long LEASE_WAIT_MILLIS = LEASE_MILLIS + 1_000;
+    private static final long LEASE_RETRY_MILLIS = 100;
+    private static final long HELD = 0, LEASED = 1, LEASED_SHARED = 2;
+    // Marks the user as present here (or on more than one node, "*"), then takes the lease if it's free or still
+    // ours from an earlier command. Returns HELD, LEASED or LEASED_SHARED.
+    private static final String ACQUIRE_SCRIPT = """
+            local present = redis.call('get', KEYS[1])
+            local shared = present == '*' or (present and present ~= ARGV[1])
+            redis.call('set', KEYS[1], shared and '*' or ARGV[1], 'px', ARGV[2])
+            local holder = redis.call('get', KEYS[2])
+            if holder and holder ~= ARGV[1] then
+                return 0
+            end
+            redis.call('set', KEYS[2], ARGV[1], 'px', ARGV[3])
+            return shared and 2 or 1
+            """;
+    // Only delete the lease if it's still ours: it could've expired and be someone else's by now.
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final boolean useLeases = ExtraRuntimeOptions.SHARD_SUBSET;
+    private final CommandScheduler scheduler;
+    private final int maxQueued;
+    private final ScheduledExecutorService retries;
+
+    /**
+     * @param scheduler Where the next command of a user gets submitted once the previous one is done.
+     * @param maxQueued How many commands a single user can have waiting.
+     */
+    CommandMailbox(CommandScheduler scheduler, int maxQueued) {
+        this.scheduler = scheduler;
+        this.maxQueued = Math.max(1, maxQueued);
+        if (useLeases) {
+            this.retries = Executors.newScheduledThreadPool(1,
+                    new ThreadFactoryBuilder().setNameFormat("Mantaro Command Lease Retry").setDaemon(true).build()
+            );
+            Metrics.THREAD_POOL_COLLECTOR.add("command-lease-retry", retries);
+        } else {
+            this.retries = null;
+        }
+    }
+
+    /**
+     * Runs a command for a user after any other command of theirs that's running or waiting. If there's none,
+     * it runs right away on the calling thread. Otherwise this returns right away, and the command gets
+     * submitted to the scheduler once it's its turn.
+     *
+     * @param guildId  The guild the command comes from, to queue it on the right lane of the scheduler.
+     * @param userId   The user running the command.
+     * @param command  The command.
+     * @param rejected Called instead of the command if it can't run: too many waiting, the bot is busy, or another
+     *                 node didn't let go of the user in time.
+     */
+    void run(long guildId, long userId, Runnable command, Runnable rejected) {
+        var mail = new Mail(guildId, command, rejected);
+        var accepted = new boolean[1];
+        var start = new boolean[1];
+        mailboxes.compute(userId, (id, current) -> {
+            var box = current == null ? new Mailbox() : current;
+            if (box.queue.size() >= maxQueued) {
+                return box;
+            }
+
+            accepted[0] = true;
+            box.queue.add(mail);
+            if (!box.draining) {
+                box.draining = true;
+                start[0] = true;
+            }
+
+            return box;
+        });
+
+        if (!accepted[0]) {
+            rejected.run();
+            return;
+        }
+
+        if (start[0]) {
+            drain(userId);
+        }
+    }
+
+    // Runs the first command on the mailbox. Only one of these runs at a time for a user: whoever set draining,
+    // and then whoever that passed it on to.
+    private void drain(long userId) {
+        var mail = mailboxes.get(userId).queue.peek();
+        var lease = HELD;
+        if (useLeases) {
+            try {
+                lease = acquireLease(userId);
+            } catch (Exception e) {
+                log.warn("Couldn't get the command lease for user {}", userId, e);
+                finish(userId, true);
+                return;
+            }
+
+            if (lease == HELD) {
+                if (System.currentTimeMillis() - mail.queuedAt < LEASE_WAIT_MILLIS) {
+                    retries.schedule(() -> resubmit(userId, mail.guildId), LEASE_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                } else {
+                    log.debug("Gave up waiting for the command lease of user {}", userId);
+                    finish(userId, true);
+                }
+
+                return;
+            }
+        }
+
+        try {
+            mail.command.run();
+        } finally {
+            if (lease == LEASED_SHARED) {
+                releaseLease(userId);
+            }
+
+            finish(userId, false);
+        }
+    }
+
+    // Takes the first command off the mailbox (telling the user if it didn't run), and passes the turn on to the next.
+    private void finish(long userId, boolean rejected) {
+        Mail[] done = new Mail[1];
+        Mail[] next = new Mail[1];
+        mailboxes.computeIfPresent(userId, (id, box) -> {
+            done[0] = box.queue.poll();
+            next[0] = box.queue.peek();
+            // Drop the mailbox once it's empty, so this only holds the users that are running something.
+            return next[0] == null ? null : box;
+        });
+
+        if (rejected && done[0] != null) {
+            done[0].rejected.run();
+        }
+
+        if (next[0] != null) {
+            resubmit(userId, next[0].guildId);
+        }
+    }
+
+    private void resubmit(long userId, long guildId) {
+        // No user here: the mailbox already limits how many commands each user has waiting.
+        if (!scheduler.submit(guildId, 0, () -> drain(userId))) {
+            finish(userId, true);
+        }
+    }
+
+    private long acquireLease(long userId) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var result = jedis.eval(ACQUIRE_SCRIPT,
+                    List.of(PRESENCE_PREFIX + userId, LEASE_PREFIX + userId),
+                    List.of(nodeId, String.valueOf(PRESENCE_MILLIS), String.valueOf(LEASE_MILLIS))
+            );
+
+            return ((Number) result).longValue();
+        }
+    }
+
+    private void releaseLease(long userId) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.eval(RELEASE_SCRIPT, List.of(LEASE_PREFIX + userId), List.of(nodeId));
+        } catch (Exception e) {
+            // It expires on its own anyway.
+            log.warn("Couldn't release the command lease for user {}", userId, e);
+        }
+    }
+
+    private static class Mailbox {
+        // Only added to and polled from inside compute on the map, but peeked at from outside of it.
+        private final ConcurrentLinkedQueue<Mail> queue = new ConcurrentLinkedQueue<>();
+        private boolean draining;
+    }
+
+    private static class Mail {
+        private final long guildId;
+        private final Runnable command;
+        private final Runnable rejected;
+        private final long queuedAt = System.currentTimeMillis();
+
+        private Mail(long guildId, Runnable command, Runnable rejected) {
+            this.guildId = guildId;
+            this.command = command;
+            this.rejected = rejected;
+        }
+    }
+}
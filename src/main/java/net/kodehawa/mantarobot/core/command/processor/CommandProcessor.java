@@ -19,7 +19,13 @@ package net.kodehawa.mantarobot.core.command.processor;
 import io.prometheus.client.Histogram;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.core.CommandRegistry;
+import net.kodehawa.mantarobot.core.CommandScheduler;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
 
@@ -28,66 +34,124 @@ public class CommandProcessor {
     private static final Histogram commandTime = Histogram.build()
             .name("command_time").help("Time it takes for a command to be ran.")
             .register();
+    // Commands ran this session.
+    private static final AtomicInteger commandTotal = new AtomicInteger();
 
-    public boolean run(GuildMessageReceivedEvent event) {
-        final long start = System.currentTimeMillis();
+    private final PrefixMatcher prefixMatcher;
+    private final CommandMailbox mailbox;
+
+    public CommandProcessor(CommandScheduler scheduler) {
         final var config = MantaroData.config().get();
+        this.prefixMatcher = new PrefixMatcher(config.prefix, config.getClientId());
+        this.mailbox = new CommandMailbox(scheduler, config.getCommandQueuePerUser());
+    }
+
+    public static int getCommandTotal() {
+        return commandTotal.get();
+    }
+
+    public boolean run(GuildMessageReceivedEvent event) {
         // The command executed, in raw form.
         var rawCmd = event.getMessage().getContentRaw();
-        // Lower-case raw cmd check, only used for prefix checking.
-        final var lowerRawCmd = rawCmd.toLowerCase();
-
-        // Mantaro prefixes.
-        String[] prefix = config.prefix;
-        // Guild-specific prefix.
-        final var dbGuild = MantaroData.db().getGuild(event.getGuild());
-        var customPrefix = dbGuild.getData().getGuildCustomPrefix();
-        // Possible mentions
-        boolean isMention = false;
-        String[] mentionPrefixes = {
-                "<@%s> ".formatted(config.getClientId()),
-                "<@!%s> ".formatted(config.getClientId())
-        };
+        // Guild-specific prefix. The config is cached, so this is only a lookup most of the time.
+        final var guildConfig = MantaroData.db().getGuildCommandConfig(event.getGuild());
+        var customPrefix = guildConfig.getGuildCustomPrefix();
 
         // What prefix did this person use.
-        String usedPrefix = null;
-        for (String mention : mentionPrefixes) {
-            if (lowerRawCmd.startsWith(mention)) {
-                usedPrefix = mention;
-                isMention = true;
-            }
-        }
-
-        for (String s : prefix) {
-            if (lowerRawCmd.startsWith(s)) {
-                usedPrefix = s;
-            }
-        }
+        String usedPrefix;
+        boolean isMention = false;
+        var globalPrefix = prefixMatcher.match(rawCmd);
 
         // Remove prefix from arguments.
-        if (usedPrefix != null && lowerRawCmd.startsWith(usedPrefix.toLowerCase())) {
+        if (globalPrefix != null) {
+            usedPrefix = globalPrefix.getValue();
+            isMention = globalPrefix.isMention();
             rawCmd = rawCmd.substring(usedPrefix.length());
-        } else if (customPrefix != null && lowerRawCmd.startsWith(customPrefix.toLowerCase())) {
+        } else if (customPrefix != null && PrefixMatcher.startsWith(rawCmd, customPrefix)) {
             rawCmd = rawCmd.substring(customPrefix.length());
             usedPrefix = customPrefix;
-        } else if (usedPrefix == null) {
+        } else {
             return false;
         }
 
-        // This could be done using a lock, but that would be a little too blocking. So just set a flag.
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            jedis.set("commands-running-" + event.getAuthor().getId(), String.valueOf(1));
-        }
-
         // The command arguments to parse.
         String[] parts = splitArgs(rawCmd, 2);
         String cmdName = parts[0], content = parts[1];
 
-        // Run the actual command here.
-        REGISTRY.process(event, dbGuild, cmdName, content, usedPrefix, isMention);
+        final var prefixUsed = usedPrefix;
+        final var mentioned = isMention;
+        Runnable command = guarded(event, () -> REGISTRY.process(event, guildConfig, cmdName, content, prefixUsed, mentioned));
+        // After any other command of this user: almost any command can end up saving their player (badges, rewards,
+        // rolls), so they all take turns, like they did with the old running flag.
+        mailbox.run(event.getGuild().getIdLong(), event.getAuthor().getIdLong(), command, () ->
+                event.getChannel().sendMessage(
+                        EmoteReference.STOPWATCH + "You already have a command running, please wait for it to finish."
+                ).queue()
+        );
 
-        final long end = System.currentTimeMillis();
-        commandTime.observe(end - start);
         return true;
     }
+
+    // Wherever the command ends up running (right away, or later from the mailbox), errors get reported to the user
+    // and only the time it actually took to run is measured, not the wait.
+    private static Runnable guarded(GuildMessageReceivedEvent event, Runnable command) {
+        return () -> {
+            final long start = System.currentTimeMillis();
+            try {
+                command.run();
+                commandTotal.incrementAndGet();
+            } catch (Exception e) {
+                CommandExceptionHandler.handle(event, e);
+            } finally {
+                final long end = System.currentTimeMillis();
+                commandTime.observe(end - start);
+            }
+        };
+    }
+
+    /**
+     * Whether a message starts with one of the global prefixes (or mentions the bot).
+     * Doesn't check the custom prefix, so this doesn't need the guild.
+     *
+     * @param content The raw content of the message.
+     * @return Whether it starts with a global prefix.
+     */
+    public boolean hasGlobalPrefix(String content) {
+        return prefixMatcher.match(content) != null;
+    }
+
+    /**
+     * Whether a message starts with a prefix that works on its guild: a global one, or the guild's custom prefix.
+     * Only looks at the guild's command config if it doesn't start with a global prefix. That can go to the database
+     * if it isn't cached, so this shouldn't be called from the gateway threads: see {@link #hasCachedPrefix(GuildMessageReceivedEvent)}.
+     *
+     * @param event The message.
+     * @return Whether the message could be a command.
+     */
+    public boolean hasPrefix(GuildMessageReceivedEvent event) {
+        var content = event.getMessage().getContentRaw();
+        return hasGlobalPrefix(content) || hasCustomPrefix(content, MantaroData.db().getGuildCommandConfig(event.getGuild()));
+    }
+
+    /**
+     * Same as {@link #hasPrefix(GuildMessageReceivedEvent)}, but never goes to the database.
+     *
+     * @param event The message.
+     * @return Whether the message could be a command, or null if that depends on a custom prefix that isn't cached.
+     */
+    @Nullable
+    public Boolean hasCachedPrefix(GuildMessageReceivedEvent event) {
+        var content = event.getMessage().getContentRaw();
+        if (hasGlobalPrefix(content)) {
+            return true;
+        }
+
+        var config = MantaroData.db().getCachedGuildCommandConfig(event.getGuild().getId());
+        return config == null ? null : hasCustomPrefix(content, config);
+    }
+
+    private static boolean hasCustomPrefix(String content, GuildCommandConfig config) {
+        var customPrefix = config.getGuildCustomPrefix();
+        return customPrefix != null && PrefixMatcher.startsWith(content, customPrefix);
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+
+/**
+ * Matches the global prefixes (the configured ones, and mentioning the bot) at the start of a message.
+ * Built once, so checking a message that isn't a command doesn't allocate anything:
+ * the first character of the message rules out most prefixes, and the rest is compared in place, ignoring case.
+ */
+final class PrefixMatcher {
+    private final Prefix[] prefixes;
+    private final char[] firstChars;
+
+    PrefixMatcher(@Nonnull String[] prefixes, @Nonnull String clientId) {
+        var all = new ArrayList<Prefix>();
+        all.add(new Prefix("<@%s> ".formatted(clientId), true));
+        all.add(new Prefix("<@!%s> ".formatted(clientId), true));
+        for (var prefix : prefixes) {
+            if (prefix != null && !prefix.isEmpty()) {
+                all.add(new Prefix(prefix, false));
+            }
+        }
+
+        this.prefixes = all.toArray(new Prefix[0]);
+        this.firstChars = new char[this.prefixes.length];
+        for (int i = 0; i < this.prefixes.length; i++) {
+            firstChars[i] = Character.toLowerCase(this.prefixes[i].value.charAt(0));
+        }
+    }
+
+    /**
+     * Finds the prefix a message starts with.
+     * If more than one matches, the one that comes last wins (mentions come first, then the configured ones in order).
+     *
+     * @param content The raw content of the message.
+     * @return The prefix it starts with, or null if it doesn't start with any.
+     */
+    @Nullable
+    Prefix match(@Nonnull String content) {
+        if (content.isEmpty()) {
+            return null;
+        }
+
+        var first = Character.toLowerCase(content.charAt(0));
+        for (int i = prefixes.length - 1; i >= 0; i--) {
+            if (firstChars[i] == first && startsWith(content, prefixes[i].value)) {
+                return prefixes[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Case-insensitive startsWith, without lower-casing (and copying) either of them.
+     *
+     * @param content The content to check.
+     * @param prefix  The prefix.
+     * @return Whether the content starts with the prefix, ignoring case.
+     */
+    static boolean startsWith(@Nonnull String content, @Nonnull String prefix) {
+        return content.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    static final class Prefix {
+        private final String value;
+        private final boolean mention;
+
+        private Prefix(String value, boolean mention) {
+            this.value = value;
+            this.mention = mention;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        boolean isMention() {
+            return mention;
+        }
+    }
+}
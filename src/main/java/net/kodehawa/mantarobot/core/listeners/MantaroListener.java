@@ -43,6 +43,7 @@ import net.kodehawa.mantarobot.commands.BirthdayCmd;
 import net.kodehawa.mantarobot.commands.currency.TextChannelGround;
 import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
+import net.kodehawa.mantarobot.core.CommandScheduler;
 import net.kodehawa.mantarobot.core.MantaroCore;
 import net.kodehawa.mantarobot.core.MantaroEventManager;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
@@ -67,7 +68,6 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 
 public class MantaroListener implements EventListener {
@@ -79,12 +79,12 @@ public class MantaroListener implements EventListener {
     // Channels we could send the greet message to.
     private static final List<String> CHANNEL_NAMES = List.of("general", "general-chat", "chat", "lounge", "main-chat", "main");
 
-    private final ExecutorService threadPool;
+    private final CommandScheduler scheduler;
     private final Cache<Long, Optional<CachedMessage>> messageCache;
     private final MantaroBot bot;
 
-    public MantaroListener(ExecutorService threadPool, Cache<Long, Optional<CachedMessage>> messageCache) {
-        this.threadPool = threadPool;
+    public MantaroListener(CommandScheduler scheduler, Cache<Long, Optional<CachedMessage>> messageCache) {
+        this.scheduler = scheduler;
         this.messageCache = messageCache;
         bot = MantaroBot.getInstance();
     }
@@ -92,7 +92,7 @@ public class MantaroListener implements EventListener {
     @Override
     public void onEvent(@NotNull GenericEvent event) {
         if (event instanceof ReadyEvent) {
-            threadPool.execute(() -> this.updateStats(event.getJDA()));
+            scheduler.submit(0, 0, () -> this.updateStats(event.getJDA()));
             return;
         }
 
@@ -102,13 +102,16 @@ public class MantaroListener implements EventListener {
         }
 
         // !! Member events start
+        // Join/leave messages and logs are the first to go if we're busy.
         if (event instanceof GuildMemberJoinEvent) {
-            threadPool.execute(() -> onUserJoin((GuildMemberJoinEvent) event));
+            var joinEvent = (GuildMemberJoinEvent) event;
+            scheduler.submitOptional(joinEvent.getGuild().getIdLong(), () -> onUserJoin(joinEvent));
             return;
         }
 
         if (event instanceof GuildMemberRemoveEvent) {
-            threadPool.execute(() -> onUserLeave((GuildMemberRemoveEvent) event));
+            var leaveEvent = (GuildMemberRemoveEvent) event;
+            scheduler.submitOptional(leaveEvent.getGuild().getIdLong(), () -> onUserLeave(leaveEvent));
             return;
         }
 
@@ -120,12 +123,14 @@ public class MantaroListener implements EventListener {
 
         // !! Events needed for the log feature start
         if (event instanceof GuildMessageUpdateEvent) {
-            threadPool.execute(() -> logEdit((GuildMessageUpdateEvent) event));
+            var updateEvent = (GuildMessageUpdateEvent) event;
+            scheduler.submitOptional(updateEvent.getGuild().getIdLong(), () -> logEdit(updateEvent));
             return;
         }
 
         if (event instanceof GuildMessageDeleteEvent) {
-            threadPool.execute(() -> logDelete((GuildMessageDeleteEvent) event));
+            var deleteEvent = (GuildMessageDeleteEvent) event;
+            scheduler.submitOptional(deleteEvent.getGuild().getIdLong(), () -> logDelete(deleteEvent));
             return;
         }
 
@@ -198,7 +203,7 @@ public class MantaroListener implements EventListener {
     private void handleNewPatron(GuildMemberRoleAddEvent event) {
         //Only in mantaro's guild...
         if (event.getGuild().getIdLong() == 213468583252983809L && !CONFIG.isPremiumBot()) {
-            threadPool.execute(() -> {
+            scheduler.submit(event.getGuild().getIdLong(), event.getUser().getIdLong(), () -> {
                 var hasPatronRole = event.getMember().getRoles().stream().anyMatch(r -> r.getId().equals("290257037072531466"));
                 // No patron role to be seen here.
                 if (!hasPatronRole) {
@@ -255,7 +260,7 @@ public class MantaroListener implements EventListener {
 
     private void logDelete(GuildMessageDeleteEvent event) {
         try {
-            final var dbGuild = MantaroData.db().getGuild(event.getGuild());
+            final var dbGuild = MantaroData.db().getCachedGuild(event.getGuild());
             final var data = dbGuild.getData();
             final var logChannel = data.getGuildLogChannel();
 
@@ -327,7 +332,7 @@ public class MantaroListener implements EventListener {
 
     private void logEdit(GuildMessageUpdateEvent event) {
         try {
-            final var guildData = MantaroData.db().getGuild(event.getGuild()).getData();
+            final var guildData = MantaroData.db().getCachedGuild(event.getGuild()).getData();
             final var logChannel = guildData.getGuildLogChannel();
 
             if (logChannel != null) {
@@ -544,7 +549,7 @@ public class MantaroListener implements EventListener {
 
     private void onUserJoin(GuildMemberJoinEvent event) {
         final var guild = event.getGuild();
-        final var dbGuild = MantaroData.db().getGuild(guild);
+        final var dbGuild = MantaroData.db().getCachedGuild(guild);
         final var guildData = dbGuild.getData();
         final var role = guildData.getGuildAutoRole();
         final var hour = Utils.formatHours(OffsetDateTime.now(), guildData.getLogTimezone(), guildData.getLang());
@@ -600,7 +605,7 @@ public class MantaroListener implements EventListener {
     private void onUserLeave(GuildMemberRemoveEvent event) {
         final var guild = event.getGuild();
         final var user = event.getUser();
-        final var dbGuild = MantaroData.db().getGuild(guild);
+        final var dbGuild = MantaroData.db().getCachedGuild(guild);
         final var guildData = dbGuild.getData();
 
         try {
@@ -645,10 +650,11 @@ public class MantaroListener implements EventListener {
             LOG.error("Failed to send leave message!", e);
         }
 
-        var allowedBirthdays = guildData.getAllowedBirthdays();
-        if (allowedBirthdays.contains(user.getId())) {
-            allowedBirthdays.remove(user.getId());
-            dbGuild.saveAsync();
+        if (guildData.getAllowedBirthdays().contains(user.getId())) {
+            // The cached guild is shared, so modify a fresh copy instead.
+            final var toSave = MantaroData.db().getGuild(guild);
+            toSave.getData().getAllowedBirthdays().remove(user.getId());
+            toSave.saveAsync();
 
             var bdCacheMap = BirthdayCmd.getGuildBirthdayCache().getIfPresent(guild.getId());
             if (bdCacheMap != null) {
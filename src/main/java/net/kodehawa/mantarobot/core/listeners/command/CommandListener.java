@@ -17,51 +17,42 @@
 package net.kodehawa.mantarobot.core.listeners.command;
 
 import com.google.common.cache.Cache;
-import com.rethinkdb.gen.exc.ReqlError;
-import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.GenericEvent;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
-import net.dv8tion.jda.api.exceptions.PermissionException;
 import net.dv8tion.jda.api.hooks.EventListener;
-import net.kodehawa.mantarobot.commands.currency.profile.Badge;
-import net.kodehawa.mantarobot.commands.game.core.GameLobby;
+import net.kodehawa.mantarobot.core.CommandScheduler;
+import net.kodehawa.mantarobot.core.command.processor.CommandExceptionHandler;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
-import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
-import net.kodehawa.mantarobot.data.I18n;
-import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.LanguageKeyNotFoundException;
-import net.kodehawa.mantarobot.utils.Snow64;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
 import org.jetbrains.annotations.NotNull;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.IllegalFormatException;
 import java.util.Optional;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class CommandListener implements EventListener {
     private static final RateLimiter experienceRatelimiter = new RateLimiter(TimeUnit.SECONDS, 18);
-    private static final Logger log = LoggerFactory.getLogger(CommandListener.class);
-    // Commands ran this session.
-    private static int commandTotal = 0;
+    private static final RateLimiter busyRatelimiter = new RateLimiter(TimeUnit.MINUTES, 1);
+    private static final ExperienceAccumulator experience = new ExperienceAccumulator(10, TimeUnit.SECONDS);
     private final Random random = new Random();
     private final CommandProcessor commandProcessor;
-    private final ExecutorService threadPool;
+    private final CommandScheduler scheduler;
     private final Cache<Long, Optional<CachedMessage>> messageCache;
 
-    public CommandListener(CommandProcessor processor, ExecutorService threadPool, Cache<Long, Optional<CachedMessage>> messageCache) {
+    public CommandListener(CommandProcessor processor, CommandScheduler scheduler, Cache<Long, Optional<CachedMessage>> messageCache) {
         this.commandProcessor = processor;
-        this.threadPool = threadPool;
+        this.scheduler = scheduler;
         this.messageCache = messageCache;
     }
 
     public static int getCommandTotal() {
-        return commandTotal;
+        return CommandProcessor.getCommandTotal();
+    }
+
+    public static ExperienceAccumulator getExperienceAccumulator() {
+        return experience;
     }
 
     @Override
@@ -86,133 +77,54 @@ public class CommandListener implements EventListener {
                 return;
             }
 
-            threadPool.execute(() -> onCommand(msg));
-        }
-    }
-
-    private void onCommand(GuildMessageReceivedEvent event) {
-        try {
-            if (commandProcessor.run(event)) {
-                // Remove running flag
-                try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    jedis.del("commands-running-" + event.getAuthor().getId());
-                }
-
-                commandTotal++;
-            } else {
-                try {
-                    // Only run experience if no command has been executed, avoids weird race conditions when saving player status.
-                    // Only run experience if the user is not rate limited (clears every 30 seconds) and if the member is not null.
-                    // This will never get here if it's a bot or a webhook message due to the check we do on line 78.
-                    if (random.nextInt(15) > 7 && event.getMember() != null && experienceRatelimiter.process(event.getAuthor())) {
-                        // If a command is running on another node, don't handle (this is an issue due to multiple different Player objects)
-                        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                            var running = jedis.get("commands-running-" + event.getAuthor().getId());
-                            if (running != null) {
-                                return;
-                            }
-                        }
-
-                        // Don't run the experience handler on this channel if there's an InteractiveOperation running as there might be issues with
-                        // some nasty race conditions involving player save.
-                        if (InteractiveOperations.get(event.getChannel()).size() > 0) {
-                            return;
-                        }
-
-                        // Same reason as above, but twice as cursed.
-                        if (GameLobby.LOBBYS.containsKey(event.getChannel().getIdLong())) {
-                            return;
-                        }
-
-                        var player = MantaroData.db().getPlayer(event.getAuthor());
-                        var data = player.getData();
-                        if (player.isLocked()) {
-                            return;
-                        }
-
-                        // Set level to 1 if level is zero.
-                        if (player.getLevel() == 0) {
-                            player.setLevel(1);
-                        }
-
-                        // Increment player experience by a random number between 1 and 5.
-                        data.setExperience(data.getExperience() + random.nextInt(5));
-                        var level = player.getLevel();
-                        if (data.getExperience() > (level * Math.log10(player.getLevel()) * 1000) + (50 * level / 2D)) {
-                            player.setLevel(level + 1);
-                        }
-
-                        player.saveUpdating();
+            // Only messages that could be commands take up the command queues (and a user's share of them).
+            // Plain chat only gives out experience, which is the first thing to go when we're busy.
+            // This runs on the gateway thread: if the custom prefix of the guild isn't cached, loading it is left to the pool.
+            var isCommand = commandProcessor.hasCachedPrefix(msg);
+            if (isCommand == null) {
+                scheduler.submit(msg.getGuild().getIdLong(), msg.getAuthor().getIdLong(), () -> {
+                    if (commandProcessor.hasPrefix(msg)) {
+                        onCommand(msg);
+                    } else {
+                        onChat(msg);
                     }
-                } catch (Exception ignored) { }
+                });
+                return;
             }
-        } catch (IllegalFormatException e) {
-            var id = Snow64.toSnow64(event.getMessage().getIdLong());
-            event.getChannel().sendMessageFormat(
-                    "%sWe found at error when trying to format a String. Please report on the support server (At <https://support.mantaro.site>) with error ID `%s` (On Shard %s)",
-                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId()
-            ).queue();
 
-            log.warn("Wrong String format. Check this. ID: {}", id, e);
-        } catch (IndexOutOfBoundsException e) {
-            var id = Snow64.toSnow64(event.getMessage().getIdLong());
-            event.getChannel().sendMessageFormat(
-                    "%sYour query returned no results or you used the incorrect arguments, seemingly (Error ID: `%s`): Shard %s. Just in case, check command help!",
-                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId()
-            ).queue();
+            if (!isCommand) {
+                scheduler.submitOptional(msg.getGuild().getIdLong(), () -> onChat(msg));
+                return;
+            }
 
-            log.warn("Exception caught and alternate message sent. We should look into this, anyway (ID: {})", id, e);
-        } catch (PermissionException e) {
-            if (e.getPermission() != Permission.UNKNOWN) {
-                event.getChannel().sendMessageFormat(
-                        "%sI don't have permission to do this :(\nI need the permission: **%s**",
-                        EmoteReference.ERROR, e.getPermission().getName()
-                ).queue();
-            } else {
-                event.getChannel().sendMessage(
-                        EmoteReference.ERROR +
-                        "I cannot perform this action due to the lack of permission! Is the role I might be trying to assign " +
-                        "higher than my role? Do I have the correct permissions/hierarchy to perform this action?"
+            var queued = scheduler.submit(msg.getGuild().getIdLong(), msg.getAuthor().getIdLong(), () -> onCommand(msg));
+            // Only tell people once in a while: the bot is busy as it is.
+            if (!queued && busyRatelimiter.process(msg.getAuthor())) {
+                msg.getChannel().sendMessage(
+                        EmoteReference.STOPWATCH + "The bot is a little busy right now, please try again in a few seconds."
                 ).queue();
             }
-        } catch (LanguageKeyNotFoundException e) {
-            var id = Snow64.toSnow64(event.getMessage().getIdLong());
-            event.getChannel().sendMessageFormat(
-                    "%sWrong I18n key found, please report on the support server (At <https://support.mantaro.site>) with error ID `%s` (On Shard %s).\n%sMessage: *%s*",
-                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId(),
-                    EmoteReference.ZAP, e.getMessage()
-            ).queue();
-
-            log.warn("Missing i18n key. Check this. ID: {}", id, e);
-        } catch (IllegalArgumentException e) { //NumberFormatException == IllegalArgumentException
-            var id = Snow64.toSnow64(event.getMessage().getIdLong());
-            event.getChannel().sendMessageFormat(
-                    "%sI think you forgot something on the floor. (Error ID: `%s`): Shard %s\n" +
-                    "%sCould be an internal error, but check the command arguments or maybe the message I'm trying to send exceeds 2048 characters, " +
-                    "Just in case, check command help! (If you need further help, go to <https://support.mantaro.site>)",
-                    EmoteReference.ERROR, id, event.getJDA().getShardInfo().getShardId(), EmoteReference.WARNING
-            ).queue();
-
-            log.warn("Exception caught and alternate message sent. We should look into this, anyway (ID: {})", id, e);
-        } catch (ReqlError e) {
-            // So much just went wrong...
-            e.printStackTrace();
-        } catch (Exception e) {
-            var context = I18n.of(event.getGuild());
-            var id = Snow64.toSnow64(event.getMessage().getIdLong());
-            var player = MantaroData.db().getPlayer(event.getAuthor());
-
-            event.getChannel().sendMessageFormat(
-                    "%s%s (Unexpected error, ID: `%s`): Shard %s\n%s",
-                    EmoteReference.ERROR, context.get("general.boom_quotes"), id,
-                    event.getJDA().getShardInfo().getShardId(), context.get("general.generic_error")
-            ).queue();
+        }
+    }
 
-            if (player.getData().addBadgeIfAbsent(Badge.FIRE)) {
-                player.saveUpdating();
+    private void onChat(GuildMessageReceivedEvent event) {
+        try {
+            // Only run experience if the user is not rate limited and the member is not null.
+            // This will never get here if it's a bot or a webhook message due to the check on onEvent.
+            if (random.nextInt(15) > 7 && event.getMember() != null && !scheduler.isBusy() && experienceRatelimiter.process(event.getAuthor())) {
+                // Only buffered here: it's added (and people leveled up) on the database side every few seconds, for everyone at once.
+                // Nothing gets loaded here, and saves only send what they changed, so this doesn't race with commands, games or operations.
+                experience.add(event.getAuthor().getId(), random.nextInt(5));
             }
+        } catch (Exception ignored) { }
+    }
 
-            log.error("Error happened on command: {} (Error ID: {})", event.getMessage().getContentRaw(), id, e);
+    private void onCommand(GuildMessageReceivedEvent event) {
+        try {
+            commandProcessor.run(event);
+        } catch (Exception e) {
+            // Only the prefix and command lookup: the command itself handles its own errors, wherever it runs.
+            CommandExceptionHandler.handle(event, e);
         }
     }
 }
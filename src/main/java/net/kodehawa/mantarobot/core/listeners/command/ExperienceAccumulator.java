@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.listeners.command;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the experience people get from chatting, and writes it all to the database every so often in a single query.
+ * Leveling up happens on the database side (see {@link net.kodehawa.mantarobot.db.ManagedDatabase#addExperience}),
+ * so players never have to be loaded for this, and it can't overwrite anything a command did.
+ *
+ * <p>What's buffered is lost if the bot dies before a flush, but it's only a few seconds worth of chat experience.
+ */
+public class ExperienceAccumulator {
+    private static final Logger log = LoggerFactory.getLogger(ExperienceAccumulator.class);
+
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1,
+            new ThreadFactoryBuilder().setNameFormat("Mantaro Experience Flush").setDaemon(true).build()
+    );
+
+    ExperienceAccumulator(long interval, TimeUnit unit) {
+        Metrics.THREAD_POOL_COLLECTOR.add("experience-flush", executor);
+        executor.scheduleWithFixedDelay(this::flush, interval, interval, unit);
+    }
+
+    /**
+     * Adds experience to an user, to be saved on the next flush.
+     *
+     * @param userId     The id of the user.
+     * @param experience How much experience to add.
+     */
+    void add(String userId, long experience) {
+        pending.merge(userId, experience, Long::sum);
+    }
+
+    /**
+     * Writes everything that's buffered. Runs on its own every so often, but should be called before shutting down too.
+     */
+    public void flush() {
+        var batch = new HashMap<String, Long>();
+        for (var userId : pending.keySet()) {
+            var experience = pending.remove(userId);
+            if (experience != null && experience > 0) {
+                batch.put(userId, experience);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            MantaroData.db().addExperience(batch);
+        } catch (Exception e) {
+            // Chat experience isn't worth retrying and piling up while the database is having a bad time.
+            log.warn("Couldn't save experience for {} users", batch.size(), e);
+        }
+    }
+}
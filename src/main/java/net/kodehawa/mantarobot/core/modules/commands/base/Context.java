@@ -296,7 +296,7 @@ public class Context {
     }
 
     public boolean isUserBlacklisted(String id) {
-        return getMantaroData().getBlackListedUsers().contains(id);
+        return managedDatabase.getBlacklist().isUserBlacklisted(id);
     }
 
     public User retrieveUserById(String id) {
@@ -22,36 +22,52 @@ import net.kodehawa.mantarobot.db.entities.helpers.UserData;
 
 public class I18nContext {
     private GuildData guildData;
+    // Used instead of guildData when we only have the language (command dispatch doesn't load the whole guild).
+    private String guildLang;
     private UserData userData;
+    // Looked up on first use. Contexts only last for a command, so a language change shows up on the next one.
+    private I18n i18n;
 
     public I18nContext(GuildData guildData, UserData userData) {
         this.guildData = guildData;
         this.userData = userData;
     }
 
+    public I18nContext(String guildLang, UserData userData) {
+        this.guildLang = guildLang;
+        this.userData = userData;
+    }
+
     public I18nContext() { }
 
 
     public String get(String s) {
-        I18n context = I18n.getForLanguage(getContextLanguage());
-        return context.get(s);
+        return i18n().get(s);
     }
 
     public String withRoot(String root, String s) {
-        I18n context = I18n.getForLanguage(getContextLanguage());
-        return context.withRoot(root, s);
+        return i18n().withRoot(root, s);
+    }
+
+    private I18n i18n() {
+        if (i18n == null) {
+            i18n = I18n.getForLanguage(getContextLanguage());
+        }
+
+        return i18n;
     }
 
     public String getContextLanguage() {
-        if (guildData == null && userData == null) {
+        var guildLang = guildData == null ? this.guildLang : guildData.getLang();
+        if (guildLang == null && userData == null) {
             return "en_US";
         }
 
         String lang;
         if (userData == null)
-            lang = guildData.getLang();
+            lang = guildLang;
         else
-            lang = userData.getLang() == null || userData.getLang().isEmpty() ? guildData.getLang() : userData.getLang();
+            lang = userData.getLang() == null || userData.getLang().isEmpty() ? guildLang : userData.getLang();
 
         I18n context = I18n.getForLanguage(lang);
         return context == null ? "en_US" : lang;
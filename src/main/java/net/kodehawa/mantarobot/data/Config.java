@@ -61,6 +61,19 @@ public class Config {
     public boolean isSelfHost = false;
     public int memberCacheSize = 10_000;
     public boolean handleRatelimits = true;
+    // Weighed: each guild counts as 1, plus every entry on its lists and maps (see GuildData#weight).
+    public long guildCacheSize = 50_000;
+    public long customCommandCacheSize = 100_000;
+    public int dbReadConnections = 2;
+    public int dbWriteConnections = 1;
+    public int dbBulkConnections = 1;
+    public int dbMaxInFlightPerConnection = 64;
+    public int commandThreads = 64;
+    public int commandQueueSize = 2_000;
+    public int commandQueuePerGuild = 50;
+    public int commandQueuePerUser = 5;
+    public boolean useVirtualThreads = false;
+    public int virtualCommandThreads = 1_000;
 
     public Config() { }
 
@@ -227,4 +240,52 @@ public class Config {
     public boolean isHandleRatelimits() {
         return handleRatelimits;
     }
+
+    public long getGuildCacheSize() {
+        return guildCacheSize;
+    }
+
+    public long getCustomCommandCacheSize() {
+        return customCommandCacheSize;
+    }
+
+    public int getDbReadConnections() {
+        return dbReadConnections;
+    }
+
+    public int getDbWriteConnections() {
+        return dbWriteConnections;
+    }
+
+    public int getDbBulkConnections() {
+        return dbBulkConnections;
+    }
+
+    public int getDbMaxInFlightPerConnection() {
+        return dbMaxInFlightPerConnection;
+    }
+
+    public int getCommandThreads() {
+        return commandThreads;
+    }
+
+    public int getCommandQueueSize() {
+        return commandQueueSize;
+    }
+
+    public int getCommandQueuePerGuild() {
+        return commandQueuePerGuild;
+    }
+
+    public int getCommandQueuePerUser() {
+        return commandQueuePerUser;
+    }
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public int getVirtualCommandThreads() {
+        return virtualCommandThreads;
+    }
 }
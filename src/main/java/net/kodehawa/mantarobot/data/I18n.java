@@ -52,30 +52,55 @@ public class I18n {
             throw new ExceptionInInitializerError(e);
         }
 
+        Map<String, Map<String, String[]>> tables = new HashMap<>();
         for (String lang : LANGUAGES) {
             var is = I18n.class.getResourceAsStream("/assets/languages/" + lang);
             try {
-                @SuppressWarnings("unchecked")
-                Map<String, ?> map = (Map<String, ?>) mapper.readValue(is, Map.class);
-
-                var name = lang.replace(".json", "");
-                m.put(name, new I18n(map, lang));
-
-                log.debug("Initialized I18n for: {}", name);
+                Map<?, ?> map = mapper.readValue(is, Map.class);
+                Map<String, String[]> table = new HashMap<>();
+                flatten(null, map, table);
+                tables.put(lang.replace(".json", ""), table);
             } catch (Exception e) {
                 throw new Error("Unable to initialize I18n", e);
             }
         }
 
+        // Keys missing from a language fall back to en_US, so those are copied over now instead of looked up later.
+        var fallback = tables.getOrDefault("en_US", Map.of());
+        for (var entry : tables.entrySet()) {
+            var name = entry.getKey();
+            var table = new HashMap<>(fallback);
+            table.putAll(entry.getValue());
+            m.put(name, new I18n(table));
+
+            log.debug("Initialized I18n for: {}", name);
+        }
+
         LANGUAGE_MAP = Collections.unmodifiableMap(m);
     }
 
-    private final Map<String, ?> map;
-    private final String language;
+    // Every string (or list of strings) by its full key, like "commands.ping.text", already fixed for RTL.
+    private final Map<String, String[]> table;
 
-    private I18n(Map<String, ?> map, String language) {
-        this.map = map;
-        this.language = language;
+    private I18n(Map<String, String[]> table) {
+        this.table = table;
+    }
+
+    private static void flatten(String prefix, Map<?, ?> map, Map<String, String[]> into) {
+        for (var entry : map.entrySet()) {
+            var key = prefix == null ? String.valueOf(entry.getKey()) : prefix + "." + entry.getKey();
+            var value = entry.getValue();
+            if (value instanceof Map) {
+                flatten(key, (Map<?, ?>) value, into);
+            } else if (value instanceof String) {
+                into.put(key, new String[] { Utils.fixInlineCodeblockDirection((String) value) });
+            } else if (value instanceof Collection && !((Collection<?>) value).isEmpty()) {
+                into.put(key, ((Collection<?>) value).stream()
+                        .map(String::valueOf)
+                        .map(Utils::fixInlineCodeblockDirection)
+                        .toArray(String[]::new));
+            }
+        }
     }
 
     public static I18n of(String guildId) {
@@ -117,43 +142,6 @@ public class I18n {
         ROOT.set(newRoot);
     }
 
-    @SuppressWarnings("unchecked")
-    private String get(Map<String, ?> map, String[] parts, boolean recursion) {
-        var index = 0;
-        while (index != parts.length - 1) {
-            Object maybeMap = map.get(parts[index]);
-            if (maybeMap instanceof Map) {
-                map = (Map<String, ?>) maybeMap;
-                index++;
-            } else {
-                if (language.equals("en_US") || recursion) {
-                    throw new LanguageKeyNotFoundException("Missing i18n key " + String.join(".", parts));
-                }
-
-                return get(LANGUAGE_MAP.get("en_US").map, parts, true);
-            }
-        }
-
-        Object maybeString = map.get(parts[index]);
-        if (maybeString instanceof String) {
-            return (String) maybeString;
-        }
-
-        if (maybeString instanceof Collection) {
-            Collection<String> c = ((Collection<String>) maybeString);
-            return c.stream()
-                    .skip(ThreadLocalRandom.current().nextInt(c.size()))
-                    .findFirst()
-                    .orElseThrow(AssertionError::new);
-        }
-
-        if (language.equals("en_US") || recursion) {
-            throw new LanguageKeyNotFoundException("Missing i18n key " + String.join(".", parts));
-        }
-
-        return get(LANGUAGE_MAP.get("en_US").map, parts, true);
-    }
-
     public String get(String query) {
         var root = ROOT.get();
         String actualQuery;
@@ -164,7 +152,12 @@ public class I18n {
             actualQuery = root + "." + query;
         }
 
-        return Utils.fixInlineCodeblockDirection(get(map, actualQuery.split("\\."), false));
+        var values = table.get(actualQuery);
+        if (values == null) {
+            throw new LanguageKeyNotFoundException("Missing i18n key " + actualQuery);
+        }
+
+        return values.length == 1 ? values[0] : values[ThreadLocalRandom.current().nextInt(values.length)];
     }
 
     public String withRoot(String root, String query) {
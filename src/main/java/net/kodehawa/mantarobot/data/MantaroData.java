@@ -17,7 +17,7 @@
 package net.kodehawa.mantarobot.data;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.rethinkdb.net.Connection;
+import net.kodehawa.mantarobot.db.ConnectionPool;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
@@ -25,11 +25,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisPool;
 
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-
-import static com.rethinkdb.RethinkDB.r;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class MantaroData {
     private static final Logger log = LoggerFactory.getLogger(MantaroData.class);
@@ -37,9 +37,12 @@ public class MantaroData {
             1, new ThreadFactoryBuilder().setNameFormat("MantaroData-Executor Thread-%d").build()
     );
 
+    // Not synchronized on the class: creating these connects to the database, and a virtual thread waiting on that would pin its carrier.
+    private static final ReentrantLock initLock = new ReentrantLock();
+
     private static JsonDataManager<Config> config;
-    private static Connection connection;
-    private static ManagedDatabase db;
+    private static volatile ConnectionPool pool;
+    private static volatile ManagedDatabase db;
 
     private static final JedisPool defaultJedisPool = new JedisPool(config().get().jedisPoolAddress, config().get().jedisPoolPort);
 
@@ -55,33 +58,42 @@ public class MantaroData {
         return config;
     }
 
-    public static Connection conn() {
-        var config = config().get();
-        if (connection == null) {
-            synchronized (MantaroData.class) {
-                if (connection != null) {
-                    return connection;
+    public static ConnectionPool pool() {
+        if (pool == null) {
+            initLock.lock();
+            try {
+                if (pool != null) {
+                    return pool;
                 }
 
-                connection = r.connection()
-                        .hostname(config.getDbHost())
-                        .port(config.getDbPort())
-                        .db(config.getDbDb())
-                        .user(config.getDbUser(), config.getDbPassword())
-                        .connect();
+                var config = config().get();
+                pool = new ConnectionPool(Map.of(
+                        ConnectionPool.Lane.READ, config.getDbReadConnections(),
+                        ConnectionPool.Lane.WRITE, config.getDbWriteConnections(),
+                        ConnectionPool.Lane.BULK, config.getDbBulkConnections()
+                ), config.getDbMaxInFlightPerConnection());
 
-                log.info("Established first database connection to {}:{} ({})",
+                log.info("Created database connection pool for {}:{} ({})",
                         config.getDbHost(), config.getDbPort(), config.getDbUser()
                 );
+            } finally {
+                initLock.unlock();
             }
         }
 
-        return connection;
+        return pool;
     }
 
     public static ManagedDatabase db() {
         if (db == null) {
-            db = new ManagedDatabase(conn());
+            initLock.lock();
+            try {
+                if (db == null) {
+                    db = new ManagedDatabase(pool(), defaultJedisPool);
+                }
+            } finally {
+                initLock.unlock();
+            }
         }
 
         return db;
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory snapshot of the blacklisted users and guilds.
+ * This gets refreshed shortly after the mantaro object is saved (on any node), and every 30 seconds just in case.
+ * Checking against this is just a hash lookup, instead of fetching the whole mantaro object per command.
+ */
+public class BlacklistCache {
+    private static final Logger log = LoggerFactory.getLogger(BlacklistCache.class);
+
+    private final ManagedDatabase db;
+    // The first load hits the database while holding this.
+    private final ReentrantLock loadLock = new ReentrantLock();
+    // Set while a refresh is waiting to run, so a bunch of saves in a row only cause one.
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private volatile Set<Long> guilds;
+    private volatile Set<Long> users;
+
+    BlacklistCache(@Nonnull ManagedDatabase db) {
+        this.db = db;
+    }
+
+    void start() {
+        MantaroData.getExecutor().scheduleAtFixedRate(this::refresh, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Refreshes the snapshot soon, on the executor. Called when the mantaro object gets saved, from threads that
+     * shouldn't wait on the database (like the one that gets the invalidations from other nodes).
+     */
+    void queueRefresh() {
+        if (refreshQueued.compareAndSet(false, true)) {
+            MantaroData.getExecutor().execute(() -> {
+                // Cleared before loading: a save that lands while this runs queues another one, so it isn't missed.
+                refreshQueued.set(false);
+                refresh();
+            });
+        }
+    }
+
+    public void refresh() {
+        try {
+            var obj = db.getMantaroData();
+            guilds = toIds(obj.getBlackListedGuilds());
+            users = toIds(obj.getBlackListedUsers());
+        } catch (Exception e) {
+            log.error("Couldn't refresh the blacklist snapshot", e);
+        }
+    }
+
+    public boolean isGuildBlacklisted(long id) {
+        ensureLoaded();
+        return guilds.contains(id);
+    }
+
+    public boolean isGuildBlacklisted(@Nonnull String id) {
+        return isGuildBlacklisted(parseId(id));
+    }
+
+    public boolean isUserBlacklisted(long id) {
+        ensureLoaded();
+        return users.contains(id);
+    }
+
+    public boolean isUserBlacklisted(@Nonnull String id) {
+        return isUserBlacklisted(parseId(id));
+    }
+
+    private void ensureLoaded() {
+        // First access: we don't want to let anyone through just because we haven't loaded it yet.
+        if (users == null || guilds == null) {
+            loadLock.lock();
+            try {
+                if (users == null || guilds == null) {
+                    refresh();
+                }
+            } finally {
+                loadLock.unlock();
+            }
+
+            // Rethink is down, most likely. Let it be, nothing is going to work anyway.
+            if (users == null || guilds == null) {
+                guilds = Collections.emptySet();
+                users = Collections.emptySet();
+            }
+        }
+    }
+
+    private static Set<Long> toIds(List<String> ids) {
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+
+        Set<Long> set = new HashSet<>(ids.size() * 2);
+        for (var id : ids) {
+            var parsed = parseId(id);
+            if (parsed != 0) {
+                set.add(parsed);
+            }
+        }
+
+        return Collections.unmodifiableSet(set);
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts cache invalidations to every other node through Redis pub/sub.
+ * Messages are in the form of {@code node|table|id}. Messages sent by this node are ignored, as the local cache
+ * was already invalidated by whoever published them.
+ */
+public class CacheInvalidator {
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidator.class);
+    private static final String CHANNEL = "mantaro-cache-invalidation";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Consumer<String>> handlers = new ConcurrentHashMap<>();
+    private final JedisPool pool;
+    private volatile boolean started;
+
+    public CacheInvalidator(@Nonnull JedisPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Registers a handler that gets called with the id of every invalidated object on the specified table.
+     *
+     * @param table   The table to listen to.
+     * @param handler What to do with the invalidated id.
+     */
+    public void register(@Nonnull String table, @Nonnull Consumer<String> handler) {
+        handlers.put(table, handler);
+    }
+
+    /**
+     * @param table The table to check.
+     * @return Whether something on this node caches objects from the specified table.
+     */
+    public boolean handles(@Nonnull String table) {
+        return handlers.containsKey(table);
+    }
+
+    /**
+     * Drops the object with the specified id from this node's cache, and tells every other node to do the same.
+     *
+     * @param table The table the object belongs to.
+     * @param id    The id of the object.
+     */
+    public void invalidate(@Nonnull String table, @Nonnull String id) {
+        var handler = handlers.get(table);
+        if (handler != null) {
+            handler.accept(id);
+        }
+
+        publish(table, id);
+    }
+
+    /**
+     * Tells every other node that the object with the specified id changed, and that they should drop it.
+     *
+     * @param table The table the object belongs to.
+     * @param id    The id of the object.
+     */
+    public void publish(@Nonnull String table, @Nonnull String id) {
+        try (var jedis = pool.getResource()) {
+            jedis.publish(CHANNEL, nodeId + "|" + table + "|" + id);
+        } catch (Exception e) {
+            log.warn("Couldn't publish cache invalidation for {}:{}", table, id, e);
+        }
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+
+        started = true;
+        var thread = new Thread(this::listen, "Mantaro-CacheInvalidator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void listen() {
+        var subscriber = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                handle(message);
+            }
+        };
+
+        // subscribe() blocks until the connection dies, so just re-subscribe when it does.
+        while (true) {
+            try (var jedis = pool.getResource()) {
+                jedis.subscribe(subscriber, CHANNEL);
+            } catch (Exception e) {
+                log.warn("Lost cache invalidation subscription, retrying in 5 seconds", e);
+            }
+
+            try {
+                TimeUnit.SECONDS.sleep(5);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(String message) {
+        var parts = message.split("\\|", 3);
+        if (parts.length != 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+
+        var handler = handlers.get(parts[1]);
+        if (handler != null) {
+            handler.accept(parts[2]);
+        }
+    }
+}
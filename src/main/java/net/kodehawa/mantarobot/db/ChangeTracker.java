@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.rethinkdb.RethinkDB;
+import com.rethinkdb.gen.ast.ReqlExpr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Keeps the document an object was loaded from, so saving it only has to send what changed since then,
+ * instead of the whole object (the whole PlayerData/GuildData/inventory, for a single changed number).
+ * Changes are tracked two levels deep: {@code data.experience} gets updated on its own, but changing
+ * something inside {@code data.waifus} sends the whole waifu map.
+ *
+ * <p>Counters (money, item amounts) can be sent as what was added or taken instead of the new value, so two commands
+ * saving the same player at once both count: see {@link #changes(Object, Set)}.
+ */
+final class ChangeTracker {
+    // Weak keys: compares by identity, and the snapshot goes away with the object.
+    private final Cache<Object, Map<String, Object>> snapshots = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    /**
+     * Converts a document from rethink to the specified type, and remembers the document for later saves.
+     *
+     * @param document The document, as returned by rethink. Can be null if it doesn't exist.
+     * @param type     The type to convert it to.
+     * @return The object, or null if the document was null.
+     */
+    @Nullable
+    <T> T load(@Nullable Map<String, Object> document, @Nonnull Class<T> type) {
+        if (document == null) {
+            return null;
+        }
+
+        var object = RethinkDB.getResultMapper().convertValue(document, type);
+        // What the object would save as, not the document itself: fields the entity doesn't know about (old ones,
+        // or ones written by the dashboard) would look removed otherwise, and the first save would delete them.
+        snapshots.put(object, serialize(object));
+        return object;
+    }
+
+    /**
+     * Gets what changed on an object since it was loaded (or last saved), in a form that can be passed
+     * to a ReQL update. The snapshot stays the same until {@link Changes#commit()} is called, which should only
+     * happen once the write is confirmed: a write that failed has to be sent again on the next save.
+     *
+     * @param object The object that's about to be saved.
+     * @return The changes, or null if the object wasn't loaded through this (it has to be saved whole).
+     */
+    @Nullable
+    Changes changes(@Nonnull Object object) {
+        return changes(object, Map.of());
+    }
+
+    /**
+     * Same as {@link #changes(Object)}, but the specified fields are sent as increments when they're whole numbers.
+     * The result is kept between 0 and the maximum of the field on the database side, as two commands that both checked
+     * there was enough (or enough room) could take it past either. Counters inside of a map (see below) get removed
+     * from it once they get to 0.
+     *
+     * @param object   The object that's about to be saved.
+     * @param counters The fields to send as increments and their maximum, with nested fields separated by dots.
+     *                 {@code inventory.*} means every field inside of {@code inventory}. Only works for the first two levels.
+     * @return The changes, or null if the object wasn't loaded through this (it has to be saved whole).
+     */
+    @Nullable
+    Changes changes(@Nonnull Object object, @Nonnull Map<String, Long> counters) {
+        var before = snapshots.getIfPresent(object);
+        if (before == null) {
+            return null;
+        }
+
+        var after = serialize(object);
+        var increments = new HashMap<List<String>, Increment>();
+        var fields = diff(before, after, List.of(), counters, increments);
+        return new Changes(object, after, fields, increments);
+    }
+
+    void forget(@Nonnull Object object) {
+        snapshots.invalidate(object);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> serialize(Object object) {
+        return RethinkDB.getResultMapper().convertValue(object, Map.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> diff(Map<String, Object> before, Map<String, Object> after, List<String> path,
+                                            Map<String, Long> counters, Map<List<String>, Increment> increments) {
+        Map<String, Object> changes = new HashMap<>();
+        for (var entry : after.entrySet()) {
+            var old = before.get(entry.getKey());
+            var current = entry.getValue();
+            if (sameValue(old, current)) {
+                continue;
+            }
+
+            var fieldPath = append(path, entry.getKey());
+            var counter = counterOf(fieldPath, counters);
+            if (counter != null && (old == null || isWhole(old)) && isWhole(current)) {
+                var delta = ((Number) current).longValue() - (old == null ? 0 : ((Number) old).longValue());
+                increments.put(fieldPath, counter.by(delta));
+            } else if (path.isEmpty() && old instanceof Map && current instanceof Map) {
+                changes.put(entry.getKey(), diff((Map<String, Object>) old, (Map<String, Object>) current, fieldPath, counters, increments));
+            } else {
+                // Objects get merged on update: literal replaces them instead, so removed keys stay removed.
+                changes.put(entry.getKey(), current instanceof Map ? r.literal(current) : current);
+            }
+        }
+
+        for (var entry : before.entrySet()) {
+            if (after.containsKey(entry.getKey())) {
+                continue;
+            }
+
+            var fieldPath = append(path, entry.getKey());
+            var counter = counterOf(fieldPath, counters);
+            if (counter != null && isWhole(entry.getValue())) {
+                // Take away what we had instead of removing it, in case someone else added to it in the meantime.
+                increments.put(fieldPath, counter.by(-((Number) entry.getValue()).longValue()));
+            } else {
+                changes.put(entry.getKey(), r.literal());
+            }
+        }
+
+        return changes;
+    }
+
+    private static List<String> append(List<String> path, String key) {
+        var result = new ArrayList<>(path);
+        result.add(key);
+        return List.copyOf(result);
+    }
+
+    // The increment (without the amount yet) if the field is a counter, null otherwise.
+    @Nullable
+    private static Increment counterOf(List<String> path, Map<String, Long> counters) {
+        if (counters.isEmpty()) {
+            return null;
+        }
+
+        var max = counters.get(String.join(".", path));
+        if (max != null) {
+            return new Increment(0, max, false);
+        }
+
+        if (path.size() < 2) {
+            return null;
+        }
+
+        max = counters.get(String.join(".", path.subList(0, path.size() - 1)) + ".*");
+        return max == null ? null : new Increment(0, max, true);
+    }
+
+    private static boolean isWhole(Object value) {
+        return value instanceof Number && !isDecimal((Number) value);
+    }
+
+    // Rethink gives back numbers as whatever fits, Jackson gives back whatever the field was: 1 and 1L are the same here.
+    private static boolean sameValue(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+
+        if (a == null || b == null) {
+            return false;
+        }
+
+        if (a instanceof Number && b instanceof Number) {
+            var x = (Number) a;
+            var y = (Number) b;
+            if (isDecimal(x) || isDecimal(y)) {
+                return Double.compare(x.doubleValue(), y.doubleValue()) == 0;
+            }
+
+            return x.longValue() == y.longValue();
+        }
+
+        if (a instanceof Map && b instanceof Map) {
+            var x = (Map<?, ?>) a;
+            var y = (Map<?, ?>) b;
+            if (x.size() != y.size()) {
+                return false;
+            }
+
+            for (var entry : x.entrySet()) {
+                if (!y.containsKey(entry.getKey()) || !sameValue(entry.getValue(), y.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        if (a instanceof List && b instanceof List) {
+            var x = (List<?>) a;
+            var y = (List<?>) b;
+            if (x.size() != y.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < x.size(); i++) {
+                if (!sameValue(x.get(i), y.get(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return a.equals(b);
+    }
+
+    private static boolean isDecimal(Number number) {
+        return number instanceof Double || number instanceof Float;
+    }
+
+    private static class Increment {
+        private final long delta;
+        private final long max;
+        // Entries of a map (items on the inventory) are removed at 0, like Inventory does.
+        private final boolean removeAtZero;
+
+        private Increment(long delta, long max, boolean removeAtZero) {
+            this.delta = delta;
+            this.max = max;
+            this.removeAtZero = removeAtZero;
+        }
+
+        private Increment by(long delta) {
+            return new Increment(delta, max, removeAtZero);
+        }
+
+        private Object apply(ReqlExpr current) {
+            var value = current.default_(0).add(delta);
+            var capped = max == Long.MAX_VALUE ? value : r.branch(value.gt(max), max, value);
+            var clamped = r.branch(value.lt(0), 0, capped);
+            return removeAtZero ? r.branch(value.le(0), r.literal(), clamped) : clamped;
+        }
+    }
+
+    /**
+     * What changed on an object, and the state it changed to.
+     */
+    final class Changes {
+        private final Object object;
+        private final Map<String, Object> state;
+        private final Map<String, Object> fields;
+        private final Map<List<String>, Increment> increments;
+
+        private Changes(Object object, Map<String, Object> state, Map<String, Object> fields, Map<List<String>, Increment> increments) {
+            this.object = object;
+            this.state = state;
+            this.fields = fields;
+            this.increments = increments;
+        }
+
+        boolean isEmpty() {
+            return fields.isEmpty() && increments.isEmpty();
+        }
+
+        /**
+         * @return The names of the changed top-level fields, for logging.
+         */
+        Set<String> changedFields() {
+            var names = new HashSet<>(fields.keySet());
+            increments.keySet().forEach(path -> names.add(path.get(0)));
+            return names;
+        }
+
+        /**
+         * Builds the update to send.
+         *
+         * @param row The document being updated, for the increments.
+         * @return The changes, ready for a ReQL update.
+         */
+        @SuppressWarnings("unchecked")
+        Map<String, Object> update(ReqlExpr row) {
+            if (increments.isEmpty()) {
+                return fields;
+            }
+
+            var update = new HashMap<>(fields);
+            for (var entry : increments.entrySet()) {
+                var path = entry.getKey();
+                var field = path.get(0);
+                if (path.size() == 1) {
+                    update.put(field, entry.getValue().apply(row.g(field)));
+                    continue;
+                }
+
+                // Only counters inside a map that's in both get here, so this is never a literal.
+                var nested = update.get(field) instanceof Map
+                        ? new HashMap<>((Map<String, Object>) update.get(field))
+                        : new HashMap<String, Object>();
+                nested.put(path.get(1), entry.getValue().apply(row.g(field).g(path.get(1))));
+                update.put(field, nested);
+            }
+
+            return update;
+        }
+
+        /**
+         * Makes the saved state the new snapshot. Call it after the write is confirmed.
+         */
+        void commit() {
+            snapshots.put(object, state);
+        }
+    }
+}
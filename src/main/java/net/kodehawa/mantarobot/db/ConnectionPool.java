@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.rethinkdb.net.Connection;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import net.kodehawa.mantarobot.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Pool of rethink connections, split in lanes so a big table scan can't slow down point reads.
+ * A rethink connection can run many queries at once, so a lease doesn't own its connection: it just counts
+ * towards the in-flight queries of it. Each lane caps the amount of in-flight queries it can have, and
+ * queries over that wait for a slot.
+ */
+public class ConnectionPool {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+    private static final Gauge IN_FLIGHT = Gauge.build()
+            .name("db_inflight_queries")
+            .help("Queries currently running on a database connection")
+            .labelNames("lane", "connection")
+            .register();
+    private static final Histogram WAIT_TIME = Histogram.build()
+            .name("db_pool_wait_time")
+            .help("Time it takes to get a database connection from the pool")
+            .labelNames("lane")
+            .register();
+
+    private final Map<Lane, LanePool> lanes = new EnumMap<>(Lane.class);
+
+    /**
+     * @param connections      How many connections each lane should have.
+     * @param maxInFlight      How many queries can be running on a single connection at once.
+     * @param connectionFactory Creates a new, connected, connection.
+     */
+    public ConnectionPool(@Nonnull Map<Lane, Integer> connections, int maxInFlight, @Nonnull Supplier<Connection> connectionFactory) {
+        for (var lane : Lane.values()) {
+            var size = Math.max(1, connections.getOrDefault(lane, 1));
+            lanes.put(lane, new LanePool(lane, size, maxInFlight, connectionFactory));
+        }
+    }
+
+    public ConnectionPool(@Nonnull Map<Lane, Integer> connections, int maxInFlight) {
+        this(connections, maxInFlight, Utils::newDbConnection);
+    }
+
+    /**
+     * Gets a connection from the specified lane, waiting if the lane is full.
+     * The lease MUST be closed once the query is done (including reading the whole result, if it's a cursor).
+     *
+     * @param lane The lane to use.
+     * @return The connection lease.
+     */
+    @Nonnull
+    public Lease acquire(@Nonnull Lane lane) {
+        return lanes.get(lane).acquire();
+    }
+
+    public enum Lane {
+        // Point reads: getting an user, guild, player...
+        READ,
+        // Inserts, updates and deletes.
+        WRITE,
+        // Big queries: full table scans, leaderboards, counts.
+        BULK
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Slot slot;
+        private final Semaphore permits;
+        private boolean closed;
+
+        private Lease(Slot slot, Semaphore permits) {
+            this.slot = slot;
+            this.permits = permits;
+        }
+
+        @Nonnull
+        public Connection connection() {
+            return slot.connection;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            slot.inFlight.decrementAndGet();
+            slot.gauge.dec();
+            permits.release();
+        }
+    }
+
+    private static class LanePool {
+        private final Lane lane;
+        private final Slot[] slots;
+        private final Semaphore permits;
+        private final Supplier<Connection> connectionFactory;
+        private final Histogram.Child waitTime;
+
+        private LanePool(Lane lane, int size, int maxInFlight, Supplier<Connection> connectionFactory) {
+            this.lane = lane;
+            this.slots = new Slot[size];
+            this.permits = new Semaphore(size * maxInFlight, true);
+            this.connectionFactory = connectionFactory;
+            this.waitTime = WAIT_TIME.labels(lane.name().toLowerCase());
+
+            for (int i = 0; i < size; i++) {
+                slots[i] = new Slot(IN_FLIGHT.labels(lane.name().toLowerCase(), String.valueOf(i)));
+            }
+        }
+
+        private Lease acquire() {
+            var start = System.nanoTime();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a database connection", e);
+            }
+
+            waitTime.observe(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            // Least loaded connection. There's only a handful of them, so just look at all of them.
+            var slot = slots[0];
+            for (int i = 1; i < slots.length; i++) {
+                if (slots[i].inFlight.get() < slot.inFlight.get()) {
+                    slot = slots[i];
+                }
+            }
+
+            try {
+                slot.ensureOpen(lane, connectionFactory);
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+
+            slot.inFlight.incrementAndGet();
+            slot.gauge.inc();
+            return new Lease(slot, permits);
+        }
+    }
+
+    private static class Slot {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // Not synchronized: connecting blocks, and a virtual thread would pin its carrier while at it.
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Gauge.Child gauge;
+        private volatile Connection connection;
+
+        private Slot(Gauge.Child gauge) {
+            this.gauge = gauge;
+        }
+
+        private void ensureOpen(Lane lane, Supplier<Connection> connectionFactory) {
+            var current = connection;
+            if (current != null && current.isOpen()) {
+                return;
+            }
+
+            lock.lock();
+            try {
+                if (connection != null && connection.isOpen()) {
+                    return;
+                }
+
+                if (connection == null) {
+                    connection = connectionFactory.get();
+                    log.info("Opened database connection for lane {}", lane);
+                } else {
+                    log.warn("Database connection for lane {} was closed, reconnecting", lane);
+                    connection.reconnect();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.cache.Cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * A read cache that doesn't put back what an invalidation already dropped.
+ *
+ * <p>Loading from rethink takes a while, and a save (plus its invalidation) can land between the read and the put.
+ * Putting the value then would cache the old object until it expires, so every key has a generation that
+ * {@link #invalidate(String)} bumps, and values loaded on an older generation are dropped instead.
+ * Generations are striped by hash to keep them bounded: two keys on the same stripe only cost an extra reload.
+ *
+ * @param <V> The type of the cached values.
+ */
+public final class GuardedCache<V> {
+    private static final int STRIPES = 4096;
+
+    private final Cache<String, V> cache;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    public GuardedCache(@Nonnull Cache<String, V> cache) {
+        this.cache = cache;
+    }
+
+    @Nullable
+    public V getIfPresent(@Nonnull String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Loads a value and caches it, unless the key got invalidated while it was loading.
+     *
+     * @param key    The key.
+     * @param loader Loads the current value of the key.
+     * @return The loaded value, cached or not.
+     */
+    public V load(@Nonnull String key, @Nonnull Function<String, V> loader) {
+        var stripe = stripe(key);
+        var generation = generations.get(stripe);
+        var value = loader.apply(key);
+        if (generations.get(stripe) != generation) {
+            return value;
+        }
+
+        cache.put(key, value);
+        // An invalidation can still land between the check and the put, so check again now that it's there.
+        if (generations.get(stripe) != generation) {
+            cache.invalidate(key);
+        }
+
+        return value;
+    }
+
+    /**
+     * Drops a key, and stops loads that started before this from caching what they got.
+     *
+     * @param key The key.
+     */
+    public void invalidate(@Nonnull String key) {
+        generations.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+}
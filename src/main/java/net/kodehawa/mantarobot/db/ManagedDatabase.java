@@ -16,9 +16,15 @@
 
 package net.kodehawa.mantarobot.db;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.rethinkdb.RethinkDB;
+import com.rethinkdb.ast.ReqlAst;
+import com.rethinkdb.gen.ast.Insert;
+import com.rethinkdb.gen.ast.ReqlExpr;
+import com.rethinkdb.gen.ast.ReqlFunction1;
 import com.rethinkdb.model.OptArgs;
 import com.rethinkdb.net.Connection;
-import com.rethinkdb.net.Result;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
@@ -26,23 +32,96 @@ import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.ExtraRuntimeOptions;
 import net.kodehawa.mantarobot.commands.currency.seasons.Season;
 import net.kodehawa.mantarobot.commands.currency.seasons.SeasonPlayer;
+import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.*;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPool;
 
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.List;
 
 import static com.rethinkdb.RethinkDB.r;
 
 public class ManagedDatabase {
     private static final Logger log = LoggerFactory.getLogger(ManagedDatabase.class);
-    private final Connection conn;
+    private static final String VERSION_CONFLICT = "VERSION_CONFLICT";
+    private static final int MAX_SAVE_ATTEMPTS = 5;
+    // What it takes to level up from each level, so it can be checked on the database side (ReQL has no logarithms).
+    // Level 0 never gets checked (it's taken as 1), but log10(0) isn't something we can send.
+    // Chat experience stops leveling players up past the end of it (level 2000, about 6.6 million experience for the
+    // next level): no one is anywhere close, and past that it'd be a bigger table to send on every flush.
+    private static final List<Double> LEVEL_UP_EXPERIENCE = IntStream.range(0, 2_000)
+            .mapToObj(level -> level == 0 ? 0D : Player.getExperienceToLevelUp(level))
+            .collect(Collectors.toUnmodifiableList());
+    // ReQL numbers are doubles, so the overflow check has to be against something a double can hold exactly (2^53).
+    private static final long MAX_TRANSFER_MONEY = 1L << 53;
+    private static final Set<String> VERSIONED_TABLES = Set.of(Player.DB_TABLE, SeasonPlayer.DB_TABLE, DBUser.DB_TABLE);
+    // Counters on players, and how high they can go (see Inventory for items). Money is only kept from going negative.
+    private static final Map<String, Long> PLAYER_COUNTERS = Map.of(
+            "money", Long.MAX_VALUE, "data.newMoney", Long.MAX_VALUE, "inventory.*", 5000L
+    );
+    private static final Map<String, Long> SEASON_PLAYER_COUNTERS = Map.of("money", Long.MAX_VALUE, "inventory.*", 5000L);
+    private final ConnectionPool pool;
+    private final CacheInvalidator invalidator;
+    // Read-only guild cache, used on paths that run for every message (prefix check, logs, join/leave).
+    // Entries get dropped on save/delete (and on every other node through the invalidator).
+    // The expiry is only a safety net for changes made outside of the bot.
+    // Weighed by the entries on their lists and maps: most guilds have a handful, some have thousands.
+    private final GuardedCache<DBGuild> guildCache = new GuardedCache<>(CacheBuilder.newBuilder()
+            .maximumWeight(MantaroData.config().get().getGuildCacheSize())
+            .weigher((String guildId, DBGuild guild) -> guild.getData().weight())
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .removalListener(evictionCounter("guild"))
+            .build());
+    // Same as above, but only what the command dispatch needs (see GuildCommandConfig).
+    private final GuardedCache<GuildCommandConfig> commandConfigCache = new GuardedCache<>(CacheBuilder.newBuilder()
+            .maximumWeight(MantaroData.config().get().getGuildCacheSize())
+            .weigher((String guildId, GuildCommandConfig config) -> config.weight())
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .removalListener(evictionCounter("guild_command_config"))
+            .build());
+    // The custom commands of each guild by name, all loaded at once through the guild index.
+    // Guilds without any are cached too, so a message that isn't a custom command never gets to rethink.
+    // Weighed by the amount of commands, as some guilds have hundreds and most have none.
+    private final GuardedCache<Map<String, CustomCommand>> customCommandCache = new GuardedCache<>(CacheBuilder.newBuilder()
+            .maximumWeight(MantaroData.config().get().getCustomCommandCacheSize())
+            .weigher((String guildId, Map<String, CustomCommand> commands) -> commands.size() + 1)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .removalListener(evictionCounter("custom_commands"))
+            .build());
 
-    public ManagedDatabase(@Nonnull Connection conn) {
-        this.conn = conn;
+    private final ChangeTracker changeTracker = new ChangeTracker();
+    private final BlacklistCache blacklist = new BlacklistCache(this);
+    private final PremiumCache premiumCache;
+
+    public ManagedDatabase(@Nonnull ConnectionPool pool, @Nonnull JedisPool jedisPool) {
+        this.pool = pool;
+        this.invalidator = new CacheInvalidator(jedisPool);
+        this.premiumCache = new PremiumCache(this, invalidator);
+
+        invalidator.register(DBGuild.DB_TABLE, id -> {
+            guildCache.invalidate(id);
+            commandConfigCache.invalidate(id);
+            premiumCache.dropGuild(id);
+        });
+        // Not on the invalidator thread: loading the whole mantaro object would hold up every other invalidation.
+        invalidator.register(MantaroObj.DB_TABLE, id -> blacklist.queueRefresh());
+        // Ids are guildId:name, and the whole guild gets reloaded: changing a custom command is rare enough.
+        invalidator.register(CustomCommand.DB_TABLE, id -> customCommandCache.invalidate(id.split(":", 2)[0]));
+        invalidator.start();
+        blacklist.start();
     }
 
     private static void log(String message, Object... fmtArgs) {
@@ -61,7 +140,7 @@ public class ManagedDatabase {
     @CheckReturnValue
     public CustomCommand getCustomCommand(@Nonnull String guildId, @Nonnull String name) {
         log("Requesting custom command {}:{} from rethink", guildId, name);
-        return r.table(CustomCommand.DB_TABLE).get(guildId + ":" + name).runAtom(conn, CustomCommand.class);
+        return read(c -> r.table(CustomCommand.DB_TABLE).get(guildId + ":" + name).runAtom(c, CustomCommand.class));
     }
 
     @Nullable
@@ -82,23 +161,62 @@ public class ManagedDatabase {
         return getCustomCommand(event.getGuild(), cmd);
     }
 
+    /**
+     * Gets a custom command from the local cache, loading all the custom commands of the guild if they aren't there.
+     * The returned object is shared between threads, so it should NOT be modified: use {@link #getCustomCommand(String, String)}
+     * if you need to change something and save it afterwards.
+     *
+     * @param guildId The id of the guild.
+     * @param name    The name of the custom command.
+     * @return The (possibly cached) custom command, or null if the guild doesn't have one with that name.
+     */
+    @Nullable
+    @CheckReturnValue
+    public CustomCommand getCachedCustomCommand(@Nonnull String guildId, @Nonnull String name) {
+        return getCachedCustomCommands(guildId).get(name);
+    }
+
+    /**
+     * The names of all the custom commands of a guild, from the local cache.
+     *
+     * @param guildId The id of the guild.
+     * @return The names of the custom commands of the guild. Can't be modified.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Set<String> getCustomCommandNames(@Nonnull String guildId) {
+        return getCachedCustomCommands(guildId).keySet();
+    }
+
+    private Map<String, CustomCommand> getCachedCustomCommands(String guildId) {
+        var commands = customCommandCache.getIfPresent(guildId);
+        if (commands != null) {
+            Metrics.DB_CACHE_EVENTS.labels("custom_commands", "hit").inc();
+            return commands;
+        }
+
+        Metrics.DB_CACHE_EVENTS.labels("custom_commands", "miss").inc();
+        return customCommandCache.load(guildId, id -> getCustomCommands(id).stream()
+                .collect(Collectors.toUnmodifiableMap(CustomCommand::getName, Function.identity(), (a, b) -> a)));
+    }
+
     @Nonnull
     @CheckReturnValue
     public List<CustomCommand> getCustomCommands() {
         log("Requesting all custom commands from rethink");
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE).run(conn, CustomCommand.class);
-        return c.toList();
+        return bulk(c -> r.table(CustomCommand.DB_TABLE).run(c, CustomCommand.class).toList());
     }
 
     @Nonnull
     @CheckReturnValue
     public List<CustomCommand> getCustomCommands(@Nonnull String guildId) {
         log("Requesting all custom commands from guild {} from rethink", guildId);
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE)
+        return read(c -> r.table(CustomCommand.DB_TABLE)
                 .getAll(guildId)
                 .optArg("index", "guild")
-                .run(conn, CustomCommand.class);
-        return c.toList();
+                .run(c, CustomCommand.class)
+                .toList()
+        );
     }
 
     @Nonnull
@@ -118,15 +236,18 @@ public class ManagedDatabase {
     public List<CustomCommand> getCustomCommandsByName(@Nonnull String name) {
         log("Requesting all custom commands named {} from rethink", name);
         String pattern = ':' + name + '$';
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, CustomCommand.class);
-        return c.toList();
+        return bulk(c -> r.table(CustomCommand.DB_TABLE)
+                .filter(quote -> quote.g("id").match(pattern))
+                .run(c, CustomCommand.class)
+                .toList()
+        );
     }
 
     @Nonnull
     @CheckReturnValue
     public DBGuild getGuild(@Nonnull String guildId) {
         log("Requesting guild {} from rethink", guildId);
-        DBGuild guild = r.table(DBGuild.DB_TABLE).get(guildId).runAtom(conn, DBGuild.class);
+        DBGuild guild = readTracked(DBGuild.DB_TABLE, guildId, DBGuild.class);
         return guild == null ? DBGuild.of(guildId) : guild;
     }
 
@@ -136,6 +257,83 @@ public class ManagedDatabase {
         return getGuild(guild.getId());
     }
 
+    /**
+     * Gets a guild from the local cache, or from rethink if it isn't there.
+     * The returned object is shared between threads, so it should NOT be modified: use {@link #getGuild(String)}
+     * if you need to change something and save it afterwards.
+     *
+     * @param guildId The id of the guild.
+     * @return The (possibly cached) guild.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public DBGuild getCachedGuild(@Nonnull String guildId) {
+        var guild = guildCache.getIfPresent(guildId);
+        if (guild != null) {
+            Metrics.DB_CACHE_EVENTS.labels("guild", "hit").inc();
+            return guild;
+        }
+
+        Metrics.DB_CACHE_EVENTS.labels("guild", "miss").inc();
+        return guildCache.load(guildId, this::getGuild);
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public DBGuild getCachedGuild(@Nonnull Guild guild) {
+        return getCachedGuild(guild.getId());
+    }
+
+    /**
+     * Gets the settings needed to dispatch a command on a guild, from the local cache or from rethink.
+     * Only the needed fields are fetched from rethink, instead of the whole guild.
+     *
+     * @param guildId The id of the guild.
+     * @return The (possibly cached) command config of the guild.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandConfig getGuildCommandConfig(@Nonnull String guildId) {
+        var config = commandConfigCache.getIfPresent(guildId);
+        if (config != null) {
+            Metrics.DB_CACHE_EVENTS.labels("guild_command_config", "hit").inc();
+            return config;
+        }
+
+        Metrics.DB_CACHE_EVENTS.labels("guild_command_config", "miss").inc();
+        return commandConfigCache.load(guildId, this::loadGuildCommandConfig);
+    }
+
+    /**
+     * Gets the settings needed to dispatch a command on a guild, only if they're cached already.
+     * Never goes to rethink, so it's safe to call where blocking isn't (like the gateway threads).
+     *
+     * @param guildId The id of the guild.
+     * @return The cached command config of the guild, or null if it isn't cached.
+     */
+    @Nullable
+    @CheckReturnValue
+    public GuildCommandConfig getCachedGuildCommandConfig(@Nonnull String guildId) {
+        return commandConfigCache.getIfPresent(guildId);
+    }
+
+    private GuildCommandConfig loadGuildCommandConfig(String guildId) {
+        log("Requesting command config of guild {} from rethink", guildId);
+        var config = read(c -> r.table(DBGuild.DB_TABLE)
+                .get(guildId)
+                .do_(guild -> r.branch(guild.eq(null), null, guild.pluck("id", r.hashMap("data", GuildCommandConfig.DATA_FIELDS))))
+                .runAtom(c, GuildCommandConfig.class)
+        );
+
+        return config == null ? GuildCommandConfig.of(DBGuild.of(guildId)) : config;
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandConfig getGuildCommandConfig(@Nonnull Guild guild) {
+        return getGuildCommandConfig(guild.getId());
+    }
+
     @Nonnull
     @CheckReturnValue
     public DBGuild getGuild(@Nonnull Member member) {
@@ -152,15 +350,39 @@ public class ManagedDatabase {
     @CheckReturnValue
     public MantaroObj getMantaroData() {
         log("Requesting MantaroObj from rethink");
-        MantaroObj obj = r.table(MantaroObj.DB_TABLE).get("mantaro").runAtom(conn, MantaroObj.class);
+        MantaroObj obj = read(c -> r.table(MantaroObj.DB_TABLE).get("mantaro").runAtom(c, MantaroObj.class));
         return obj == null ? MantaroObj.create() : obj;
     }
 
+    /**
+     * Gets the in-memory blacklist snapshot. Use this instead of {@link #getMantaroData()} when you only need to check
+     * if an user or guild is blacklisted.
+     *
+     * @return The blacklist snapshot.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public BlacklistCache getBlacklist() {
+        return blacklist;
+    }
+
+    /**
+     * Gets the premium status cache. Use this instead of {@link DBUser#isPremium()} or {@link DBGuild#isPremium()}
+     * when you only need to know if they're premium and don't have the object at hand already.
+     *
+     * @return The premium cache.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public PremiumCache getPremiumCache() {
+        return premiumCache;
+    }
+
     @Nonnull
     @CheckReturnValue
     public Player getPlayer(@Nonnull String userId) {
         log("Requesting player {} from rethink", userId);
-        Player player = r.table(Player.DB_TABLE).get(userId + ":g").runAtom(conn, Player.class);
+        Player player = readTracked(Player.DB_TABLE, userId + ":g", Player.class);
         return player == null ? Player.of(userId) : player;
     }
 
@@ -176,11 +398,24 @@ public class ManagedDatabase {
         return getPlayer(member.getUser());
     }
 
+    /**
+     * Gets the players for all of the specified users in a single query.
+     *
+     * @param userIds The ids of the users.
+     * @return The players, keyed by user id in the same order they were requested. Users without a player get a new one.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Player> getPlayers(@Nonnull Collection<String> userIds) {
+        log("Requesting {} players from rethink", userIds.size());
+        return getAll(Player.DB_TABLE, Player.class, userIds, ":g", Player::getUserId, Player::of);
+    }
+
     @Nonnull
     @CheckReturnValue
     public SeasonPlayer getPlayerForSeason(@Nonnull String userId, Season season) {
         log("Requesting player {} (season {}) from rethink", userId, season);
-        SeasonPlayer player = r.table(SeasonPlayer.DB_TABLE).get(userId + ":" + season).runAtom(conn, SeasonPlayer.class);
+        SeasonPlayer player = readTracked(SeasonPlayer.DB_TABLE, userId + ":" + season, SeasonPlayer.class);
         return player == null ? SeasonPlayer.of(userId, season) : player;
     }
 
@@ -196,16 +431,30 @@ public class ManagedDatabase {
         return getPlayerForSeason(member.getUser(), season);
     }
 
+    /**
+     * Gets the seasonal players for all of the specified users in a single query.
+     *
+     * @param userIds The ids of the users.
+     * @param season  The season to look up.
+     * @return The players, keyed by user id in the same order they were requested. Users without a player get a new one.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, SeasonPlayer> getSeasonPlayers(@Nonnull Collection<String> userIds, Season season) {
+        log("Requesting {} players (season {}) from rethink", userIds.size(), season);
+        return getAll(SeasonPlayer.DB_TABLE, SeasonPlayer.class, userIds, ":" + season, SeasonPlayer::getUserId, id -> SeasonPlayer.of(id, season));
+    }
+
     @CheckReturnValue
     public long getAmountSeasonalPlayers() {
-        return r.table(SeasonPlayer.DB_TABLE).count().runAtom(conn, OptArgs.of("read_mode", "outdated"), Long.class);
+        return bulk(c -> r.table(SeasonPlayer.DB_TABLE).count().runAtom(c, OptArgs.of("read_mode", "outdated"), Long.class));
     }
 
     @Nonnull
     @CheckReturnValue
     public PlayerStats getPlayerStats(@Nonnull String userId) {
         log("Requesting player STATS {} from rethink", userId);
-        PlayerStats playerStats = r.table(PlayerStats.DB_TABLE).get(userId).runAtom(conn, PlayerStats.class);
+        PlayerStats playerStats = read(c -> r.table(PlayerStats.DB_TABLE).get(userId).runAtom(c, PlayerStats.class));
         return playerStats == null ? PlayerStats.of(userId) : playerStats;
     }
 
@@ -226,8 +475,11 @@ public class ManagedDatabase {
     public List<Player> getPlayers() {
         log("Requesting all players from rethink");
         String pattern = ":g$";
-        Result<Player> c = r.table(Player.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, Player.class);
-        return c.toList();
+        return bulk(c -> r.table(Player.DB_TABLE)
+                .filter(quote -> quote.g("id").match(pattern))
+                .run(c, Player.class)
+                .toList()
+        );
     }
 
     //Can be null and it's perfectly valid.
@@ -237,23 +489,21 @@ public class ManagedDatabase {
         }
 
         log("Requesting marriage {} from rethink", marriageId);
-        return r.table(Marriage.DB_TABLE).get(marriageId).runAtom(conn, Marriage.class);
+        return read(c -> r.table(Marriage.DB_TABLE).get(marriageId).runAtom(c, Marriage.class));
     }
 
     @Nonnull
     @CheckReturnValue
     public List<Marriage> getMarriages() {
         log("Requesting all marriages from rethink");
-        Result<Marriage> c = r.table(Marriage.DB_TABLE).run(conn, Marriage.class);
-        return c.toList();
+        return bulk(c -> r.table(Marriage.DB_TABLE).run(c, Marriage.class).toList());
     }
 
     @Nonnull
     @CheckReturnValue
     public List<PremiumKey> getPremiumKeys() {
         log("Requesting all premium keys from rethink");
-        Result<PremiumKey> c = r.table(PremiumKey.DB_TABLE).run(conn, PremiumKey.class);
-        return c.toList();
+        return bulk(c -> r.table(PremiumKey.DB_TABLE).run(c, PremiumKey.class).toList());
     }
 
     //Also tests if the key is valid or not!
@@ -262,14 +512,14 @@ public class ManagedDatabase {
     public PremiumKey getPremiumKey(@Nullable String id) {
         log("Requesting premium key {} from rethink", id);
         if (id == null) return null;
-        return r.table(PremiumKey.DB_TABLE).get(id).runAtom(conn, PremiumKey.class);
+        return read(c -> r.table(PremiumKey.DB_TABLE).get(id).runAtom(c, PremiumKey.class));
     }
 
     @Nonnull
     @CheckReturnValue
     public DBUser getUser(@Nonnull String userId) {
         log("Requesting user {} from rethink", userId);
-        DBUser user = r.table(DBUser.DB_TABLE).get(userId).runAtom(conn, DBUser.class);
+        DBUser user = readTracked(DBUser.DB_TABLE, userId, DBUser.class);
         return user == null ? DBUser.of(userId) : user;
     }
 
@@ -285,30 +535,738 @@ public class ManagedDatabase {
         return getUser(member.getUser());
     }
 
+    /**
+     * Gets all of the specified users in a single query.
+     *
+     * @param userIds The ids of the users.
+     * @return The users, keyed by id in the same order they were requested. Missing users get a new one.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, DBUser> getUsers(@Nonnull Collection<String> userIds) {
+        log("Requesting {} users from rethink", userIds.size());
+        return getAll(DBUser.DB_TABLE, DBUser.class, userIds, "", DBUser::getId, DBUser::of);
+    }
+
+    // Non-blocking variants of the getters above. These don't tie up the calling thread while waiting for rethink,
+    // so independent lookups can run at the same time (fetch them all, then join them).
+    // Callbacks chained with thenApply/thenAccept run on the driver's response thread: keep them short or use the *Async methods.
+
+    @Nonnull
+    @CheckReturnValue
+    public CompletableFuture<DBGuild> getGuildAsync(@Nonnull String guildId) {
+        log("Requesting guild {} from rethink (async)", guildId);
+        return readTrackedAsync(DBGuild.DB_TABLE, guildId, DBGuild.class)
+                .thenApply(guild -> guild == null ? DBGuild.of(guildId) : guild);
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public CompletableFuture<DBUser> getUserAsync(@Nonnull String userId) {
+        log("Requesting user {} from rethink (async)", userId);
+        return readTrackedAsync(DBUser.DB_TABLE, userId, DBUser.class)
+                .thenApply(user -> user == null ? DBUser.of(userId) : user);
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public CompletableFuture<Player> getPlayerAsync(@Nonnull String userId) {
+        log("Requesting player {} from rethink (async)", userId);
+        return readTrackedAsync(Player.DB_TABLE, userId + ":g", Player.class)
+                .thenApply(player -> player == null ? Player.of(userId) : player);
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public CompletableFuture<SeasonPlayer> getPlayerForSeasonAsync(@Nonnull String userId, Season season) {
+        log("Requesting player {} (season {}) from rethink (async)", userId, season);
+        return readTrackedAsync(SeasonPlayer.DB_TABLE, userId + ":" + season, SeasonPlayer.class)
+                .thenApply(player -> player == null ? SeasonPlayer.of(userId, season) : player);
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public CompletableFuture<PlayerStats> getPlayerStatsAsync(@Nonnull String userId) {
+        log("Requesting player STATS {} from rethink (async)", userId);
+        return readAsync(c -> r.table(PlayerStats.DB_TABLE).get(userId).runAtomAsync(c, PlayerStats.class))
+                .thenApply(stats -> stats == null ? PlayerStats.of(userId) : stats);
+    }
+
+    //Completes with null if there's no marriage, same as getMarriage.
+    @Nonnull
+    @CheckReturnValue
+    public CompletableFuture<Marriage> getMarriageAsync(@Nullable String marriageId) {
+        if (marriageId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        log("Requesting marriage {} from rethink (async)", marriageId);
+        return readAsync(c -> r.table(Marriage.DB_TABLE).get(marriageId).runAtomAsync(c, Marriage.class));
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public CompletableFuture<PremiumKey> getPremiumKeyAsync(@Nullable String id) {
+        if (id == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        log("Requesting premium key {} from rethink (async)", id);
+        return readAsync(c -> r.table(PremiumKey.DB_TABLE).get(id).runAtomAsync(c, PremiumKey.class));
+    }
+
     public void save(@Nonnull ManagedObject object) {
+        if (saveChanges(object)) {
+            return;
+        }
+
         log("Saving {} {}:{} to rethink (replacing)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
-        r.table(object.getTableName())
-                .insert(object)
-                .optArg("conflict", "replace")
-                .runNoReply(conn);
+        var insert = r.table(object.getTableName()).insert(object);
+        if (object instanceof Versioned) {
+            write(object, insert.optArg("conflict", (id, oldDoc, newDoc) -> newDoc.merge(r.hashMap(Versioned.FIELD, nextVersion(oldDoc)))));
+        } else {
+            write(object, insert.optArg("conflict", "replace"));
+        }
     }
 
     public void saveUpdating(@Nonnull ManagedObject object) {
+        if (saveChanges(object)) {
+            return;
+        }
+
         log("Saving {} {}:{} to rethink (updating)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
-        r.table(object.getTableName())
-                .insert(object)
-                .optArg("conflict", "update")
-                .runNoReply(conn);
+        var insert = r.table(object.getTableName()).insert(object);
+        if (object instanceof Versioned) {
+            write(object, insert.optArg("conflict", (id, oldDoc, newDoc) ->
+                    oldDoc.merge(newDoc).merge(r.hashMap(Versioned.FIELD, nextVersion(oldDoc)))
+            ));
+        } else {
+            write(object, insert.optArg("conflict", "update"));
+        }
+    }
+
+    /**
+     * Saves an object only if no one else wrote to it since it was loaded (its version is still the same).
+     * Unlike {@link #save(ManagedObject)}, this can't overwrite what a command on another node did in the meantime.
+     * Most callers want {@link #modify(Supplier, Predicate)} instead, which retries on conflicts.
+     *
+     * @param object The object to save.
+     * @return True if it got saved, false if someone else wrote to it first (reload it and try again).
+     */
+    public <T extends ManagedObject & Versioned> boolean saveIfUnchanged(@Nonnull T object) {
+        var expected = object.getVersion();
+        object.setVersion(expected + 1);
+
+        ReqlExpr query;
+        var changes = changeTracker.changes(object, countersOf(object));
+        if (changes == null) {
+            // Not loaded from rethink (a new object, most likely): send it whole.
+            query = r.table(object.getTableName())
+                    .insert(object)
+                    .optArg("conflict", (id, oldDoc, newDoc) -> r.branch(
+                            versionOf(oldDoc).eq(expected), newDoc, r.error(VERSION_CONFLICT)
+                    ));
+        } else {
+            query = r.table(object.getTableName())
+                    .get(object.getId())
+                    .update(row -> r.branch(versionOf(row).eq(expected), changes.update(row), r.error(VERSION_CONFLICT)));
+        }
+
+        log("Saving {} {}:{} to rethink (if version is {})", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId(), expected);
+        Map<?, ?> result;
+        try {
+            result = run(ConnectionPool.Lane.WRITE, c -> query.runAtom(c, Map.class));
+        } catch (RuntimeException e) {
+            object.setVersion(expected);
+            changeTracker.forget(object);
+            throw e;
+        }
+
+        if (isCached(object.getTableName())) {
+            invalidator.invalidate(object.getTableName(), object.getId());
+        }
+
+        var errors = count(result, "errors");
+        // Skipped: it got deleted since we loaded it. Also a conflict, the reload will start over from a new one.
+        var skipped = count(result, "skipped");
+        if (errors == 0 && skipped == 0) {
+            if (changes != null) {
+                changes.commit();
+            }
+
+            return true;
+        }
+
+        object.setVersion(expected);
+        changeTracker.forget(object);
+        if (errors > 0 && !String.valueOf(result.get("first_error")).contains(VERSION_CONFLICT)) {
+            throw new IllegalStateException("Couldn't save " + object.getTableName() + ":" + object.getId() + ": " + result.get("first_error"));
+        }
+
+        Metrics.DB_VERSION_CONFLICTS.labels(object.getTableName()).inc();
+        log("Version conflict saving {}:{}", object.getTableName(), object.getDatabaseId());
+        return false;
+    }
+
+    /**
+     * Loads an object, changes it and saves it if nothing else wrote to it in the meantime.
+     * On a conflict it loads it again and re-applies the change on the new one, so the change has to
+     * be made only from what's on the object (no values read from a copy loaded before).
+     *
+     * @param loader   Loads the latest version of the object. Called again on every attempt.
+     * @param mutation Changes the object. Returning false cancels the save, for example if the player can't afford something.
+     * @return The saved object, or null if the mutation cancelled it.
+     * @throws IllegalStateException If it kept conflicting after a few attempts.
+     */
+    @Nullable
+    public <T extends ManagedObject & Versioned> T modify(@Nonnull Supplier<T> loader, @Nonnull Predicate<T> mutation) {
+        for (int attempt = 0; attempt < MAX_SAVE_ATTEMPTS; attempt++) {
+            var object = loader.get();
+            if (!mutation.test(object)) {
+                return null;
+            }
+
+            if (saveIfUnchanged(object)) {
+                return object;
+            }
+        }
+
+        throw new IllegalStateException("Couldn't save after " + MAX_SAVE_ATTEMPTS + " attempts, too many concurrent changes");
+    }
+
+    /**
+     * Same as {@link #modify(Supplier, Predicate)}, for the global player of an user.
+     *
+     * @param userId   The id of the user.
+     * @param mutation Changes the player. Returning false cancels the save.
+     * @return The saved player, or null if the mutation cancelled it.
+     */
+    @Nullable
+    public Player modifyPlayer(@Nonnull String userId, @Nonnull Predicate<Player> mutation) {
+        return modify(() -> getPlayer(userId), mutation);
     }
 
     public void delete(@Nonnull ManagedObject object) {
         log("Deleting {} {}:{} from rethink", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
-        r.table(object.getTableName())
+        write(object, r.table(object.getTableName())
                 .get(object.getId())
                 .delete()
-                .runNoReply(conn);
+        );
+    }
+
+    /**
+     * Moves money from a player to another one, checking funds and locks on the database side.
+     * Each side is a single conditional update, so there's no need to load and save both players, and
+     * nothing is lost if something else changes either player at the same time.
+     * If the receiver can't take the money (or the credit fails), the sender gets it back.
+     *
+     * @param fromUserId The user sending the money.
+     * @param toUserId   The user receiving the money.
+     * @param debit      How much to take from the sender.
+     * @param credit     How much to give to the receiver (after taxes, for example).
+     * @return The result of the transfer.
+     */
+    @Nonnull
+    public TransferResult transferMoney(@Nonnull String fromUserId, @Nonnull String toUserId, long debit, long credit) {
+        if (debit <= 0 || credit < 0) {
+            throw new IllegalArgumentException("Can't transfer a negative amount of money");
+        }
+
+        log("Transferring {} money from {} to {}", debit, fromUserId, toUserId);
+        var now = System.currentTimeMillis();
+        var result = conditionalUpdate(fromUserId + ":g", player -> r.branch(
+                isLocked(player, now), r.error(TransferResult.SENDER_LOCKED.name()),
+                money(player).lt(debit), r.error(TransferResult.NOT_ENOUGH.name()),
+                setMoney(player, money(player).sub(debit))
+        ));
+
+        if (result != TransferResult.SUCCESS) {
+            return result;
+        }
+
+        ReqlFunction1 refund = player -> setMoney(player, money(player).add(debit));
+        try {
+            result = conditionalUpdate(toUserId + ":g", player -> r.branch(
+                    isLocked(player, now), r.error(TransferResult.RECEIVER_LOCKED.name()),
+                    money(player).gt(MAX_TRANSFER_MONEY - credit), r.error(TransferResult.OVERFLOW.name()),
+                    setMoney(player, money(player).add(credit))
+            ));
+        } catch (RuntimeException e) {
+            refund(fromUserId, refund, debit + " money");
+            throw e;
+        }
+
+        if (result != TransferResult.SUCCESS) {
+            refund(fromUserId, refund, debit + " money");
+        }
+
+        return result;
+    }
+
+    /**
+     * Moves items from a player to another one, checking amounts, locks and the stack limit on the database side.
+     * Works the same way as {@link #transferMoney(String, String, long, long)}, except that the receiver being locked
+     * doesn't stop it (it never did for items).
+     *
+     * @param fromUserId The user sending the items.
+     * @param toUserId   The user receiving the items.
+     * @param itemId     The id of the item to send.
+     * @param amount     How many of them to send.
+     * @param maxStack   How many of the item the receiver can have.
+     * @return The result of the transfer.
+     */
+    @Nonnull
+    public TransferResult transferItem(@Nonnull String fromUserId, @Nonnull String toUserId, int itemId, int amount, int maxStack) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Can't transfer a negative amount of items");
+        }
+
+        log("Transferring {} of item {} from {} to {}", amount, itemId, fromUserId, toUserId);
+        var now = System.currentTimeMillis();
+        var key = String.valueOf(itemId);
+        var result = conditionalUpdate(fromUserId + ":g", player -> r.branch(
+                isLocked(player, now), r.error(TransferResult.SENDER_LOCKED.name()),
+                itemAmount(player, key).lt(amount), r.error(TransferResult.NOT_ENOUGH.name()),
+                setItemAmount(player, key, itemAmount(player, key).sub(amount))
+        ));
+
+        if (result != TransferResult.SUCCESS) {
+            return result;
+        }
+
+        ReqlFunction1 refund = player -> setItemAmount(player, key, itemAmount(player, key).add(amount));
+        try {
+            result = conditionalUpdate(toUserId + ":g", player -> r.branch(
+                    itemAmount(player, key).add(amount).gt(maxStack), r.error(TransferResult.OVERFLOW.name()),
+                    setItemAmount(player, key, itemAmount(player, key).add(amount))
+            ));
+        } catch (RuntimeException e) {
+            refund(fromUserId, refund, amount + " of item " + itemId);
+            throw e;
+        }
+
+        if (result != TransferResult.SUCCESS) {
+            refund(fromUserId, refund, amount + " of item " + itemId);
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds to a number field of an existing object, without loading it first.
+     * Does nothing if the object doesn't exist: use {@link #increment(ManagedObject, Map)} if it might not.
+     *
+     * @param table     The table the object is in.
+     * @param id        The id of the object.
+     * @param fieldPath The field to increment, with nested fields separated by dots (for example, {@code data.cases}).
+     * @param delta     How much to add. Can be negative.
+     */
+    public void increment(@Nonnull String table, @Nonnull String id, @Nonnull String fieldPath, long delta) {
+        log("Incrementing {} of {}:{} by {}", fieldPath, table, id, delta);
+        var deltas = Map.of(fieldPath, delta);
+        write(table, id, r.table(table).get(id).update(row -> incrementsOf(table, row, deltas)));
+    }
+
+    /**
+     * Adds to number fields of an object on the database side, without loading it first.
+     * If the object doesn't exist yet, it gets created from the specified defaults (with the deltas applied).
+     *
+     * @param defaults What to insert if the object doesn't exist, normally something like {@code PlayerStats.of(id)}.
+     * @param deltas   How much to add to each field, with nested fields separated by dots.
+     */
+    public void increment(@Nonnull ManagedObject defaults, @Nonnull Map<String, Long> deltas) {
+        log("Incrementing {} of {}:{}", deltas, defaults.getTableName(), defaults.getDatabaseId());
+        write(defaults.getTableName(), defaults.getId(), upsertIncrements(defaults, deltas));
+    }
+
+    public void increment(@Nonnull ManagedObject defaults, @Nonnull String fieldPath, long delta) {
+        increment(defaults, Map.of(fieldPath, delta));
+    }
+
+    /**
+     * Same as {@link #increment(ManagedObject, String, long)}, but waits for the write and returns the new value.
+     * Useful for sequences, like the mod log case number.
+     *
+     * @return The value of the field after incrementing it.
+     */
+    public long incrementAndGet(@Nonnull ManagedObject defaults, @Nonnull String fieldPath, long delta) {
+        log("Incrementing {} of {}:{} by {} (returning)", fieldPath, defaults.getTableName(), defaults.getDatabaseId(), delta);
+        var query = upsertIncrements(defaults, Map.of(fieldPath, delta)).optArg("return_changes", "always");
+        Map<?, ?> result = run(ConnectionPool.Lane.WRITE, c -> query.runAtom(c, Map.class));
+        if (isCached(defaults.getTableName())) {
+            invalidator.invalidate(defaults.getTableName(), defaults.getId());
+        }
+
+        var changes = (List<?>) result.get("changes");
+        if (changes == null || changes.isEmpty()) {
+            throw new IllegalStateException("Couldn't increment " + fieldPath + " of " + defaults.getId() + ": " + result.get("first_error"));
+        }
+
+        Object value = ((Map<?, ?>) changes.get(0)).get("new_val");
+        for (var field : fieldPath.split("\\.")) {
+            value = ((Map<?, ?>) value).get(field);
+        }
+
+        return ((Number) value).longValue();
+    }
+
+    /**
+     * Adds chat experience to a bunch of players at once, leveling them up on the database side.
+     * Players that don't exist yet get created, and locked players (doing something that can't be interrupted) are skipped.
+     * Same as the experience handler always did, but one query for everyone instead of loading and saving each player.
+     * Leveling up stops at level 2000: players past that still get the experience, but not the level.
+     *
+     * @param experience How much experience to add, by user id.
+     */
+    @SuppressWarnings("unchecked")
+    public void addExperience(@Nonnull Map<String, Long> experience) {
+        if (experience.isEmpty()) {
+            return;
+        }
+
+        var documents = new ArrayList<Map<String, Object>>(experience.size());
+        for (var entry : experience.entrySet()) {
+            var player = Player.of(entry.getKey());
+            player.setLevel(1);
+            player.getData().setExperience(entry.getValue());
+            documents.add(RethinkDB.getResultMapper().convertValue(player, Map.class));
+        }
+
+        var now = System.currentTimeMillis();
+        // The new document only has the experience to add: the conflict function puts it on top of the old one.
+        var query = r.table(Player.DB_TABLE)
+                .insert(documents)
+                .optArg("conflict", (id, oldDoc, newDoc) -> r.branch(
+                        oldDoc.g("data").g("lockedUntil").default_(0).gt(now),
+                        oldDoc,
+                        oldDoc.merge(experienceOf(oldDoc, newDoc.g("data").g("experience")))
+                ));
+
+        log("Adding experience to {} players", experience.size());
+        // Waits for it, so whoever is flushing gets to know if it failed.
+        Map<?, ?> result = run(ConnectionPool.Lane.WRITE, c -> query.runAtom(c, Map.class));
+        if (count(result, "errors") > 0) {
+            throw new IllegalStateException("Couldn't add experience to " + count(result, "errors") + " players: " + result.get("first_error"));
+        }
+    }
+
+    // Level 0 counts as 1, and only one level up at a time, like the experience handler always did.
+    private static Object experienceOf(ReqlExpr player, ReqlExpr added) {
+        var total = player.g("data").g("experience").default_(0).add(added);
+        return player.g("level").default_(0).do_(level -> r.branch(level.lt(1), 1, level)).do_(level -> r.hashMap(
+                "level", r.branch(
+                        level.lt(LEVEL_UP_EXPERIENCE.size()).and(total.gt(r.expr(LEVEL_UP_EXPERIENCE).nth(level))),
+                        level.add(1),
+                        level
+                ))
+                .with("data", r.hashMap("experience", total))
+                .with(Versioned.FIELD, nextVersion(player))
+        );
+    }
+
+    // Insert the defaults (plus the deltas) if it doesn't exist, else add the deltas to what's already there.
+    private Insert upsertIncrements(ManagedObject defaults, Map<String, Long> deltas) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> document = RethinkDB.getResultMapper().convertValue(defaults, Map.class);
+        for (var entry : deltas.entrySet()) {
+            var path = entry.getKey().split("\\.");
+            var node = document;
+            for (int i = 0; i < path.length - 1; i++) {
+                @SuppressWarnings("unchecked")
+                var next = (Map<String, Object>) node.computeIfAbsent(path[i], k -> new HashMap<String, Object>());
+                node = next;
+            }
+
+            var current = node.get(path[path.length - 1]);
+            node.put(path[path.length - 1], (current == null ? 0 : ((Number) current).longValue()) + entry.getValue());
+        }
+
+        return r.table(defaults.getTableName())
+                .insert(document)
+                .optArg("conflict", (id, oldDoc, newDoc) -> oldDoc.merge(incrementsOf(defaults.getTableName(), oldDoc, deltas)));
+    }
+
+    // Turns {"data.cases": 1} into {"data": {"cases": row("data")("cases").default(0) + 1}}
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> incrementsOf(String table, ReqlExpr row, Map<String, Long> deltas) {
+        Map<String, Object> update = new HashMap<>();
+        for (var entry : deltas.entrySet()) {
+            var path = entry.getKey().split("\\.");
+            var field = row;
+            var node = update;
+            for (int i = 0; i < path.length - 1; i++) {
+                field = field.g(path[i]);
+                node = (Map<String, Object>) node.computeIfAbsent(path[i], k -> new HashMap<String, Object>());
+            }
+
+            var last = path[path.length - 1];
+            node.put(last, field.g(last).default_(0).add(entry.getValue()));
+        }
+
+        if (VERSIONED_TABLES.contains(table)) {
+            update.put(Versioned.FIELD, nextVersion(row));
+        }
+
+        return update;
+    }
+
+    public enum TransferResult {
+        SUCCESS, NOT_ENOUGH, SENDER_LOCKED, RECEIVER_LOCKED, OVERFLOW
+    }
+
+    // Runs an update on a player that can fail with r.error(TransferResult#name). Creates the player if it doesn't exist yet.
+    private TransferResult conditionalUpdate(String playerId, ReqlFunction1 update) {
+        var result = run(ConnectionPool.Lane.WRITE, c -> r.table(Player.DB_TABLE).get(playerId).update(update).runAtom(c, Map.class));
+        if (((Number) result.getOrDefault("skipped", 0)).intValue() > 0) {
+            // Insert with conflict: error is a no-op if someone else created it in the meantime.
+            write(c -> r.table(Player.DB_TABLE).insert(Player.of(playerId.split(":")[0])).optArg("conflict", "error").run(c));
+            result = run(ConnectionPool.Lane.WRITE, c -> r.table(Player.DB_TABLE).get(playerId).update(update).runAtom(c, Map.class));
+        }
+
+        if (((Number) result.getOrDefault("errors", 0)).intValue() == 0) {
+            return TransferResult.SUCCESS;
+        }
+
+        var error = String.valueOf(result.get("first_error"));
+        for (var value : TransferResult.values()) {
+            if (error.contains(value.name())) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Couldn't update player " + playerId + ": " + error);
+    }
+
+    // Gives the sender back what a failed transfer took. There's nothing left to fall back to if this fails too,
+    // so it gets logged with enough to fix it by hand.
+    private void refund(String userId, ReqlFunction1 update, String what) {
+        try {
+            var result = conditionalUpdate(userId + ":g", update);
+            if (result != TransferResult.SUCCESS) {
+                log.error("Couldn't refund {} to {} after a failed transfer: {}", what, userId, result);
+            }
+        } catch (RuntimeException e) {
+            log.error("Couldn't refund {} to {} after a failed transfer", what, userId, e);
+        }
+    }
+
+    private static ReqlExpr isLocked(ReqlExpr player, long now) {
+        return player.g("data").g("lockedUntil").default_(0).gt(now);
+    }
+
+    // Same as Player#getCurrentMoney: premium and self-hosted bots still use the old money field.
+    private static ReqlExpr money(ReqlExpr player) {
+        var config = MantaroData.config().get();
+        if (config.isPremiumBot() || config.isSelfHost()) {
+            return player.g("money").default_(0);
+        }
+
+        return player.g("data").g("newMoney").default_(0);
+    }
+
+    // These bump the version too, so a player saved with saveIfUnchanged can't overwrite a transfer.
+    private static Object setMoney(ReqlExpr player, ReqlExpr money) {
+        var config = MantaroData.config().get();
+        if (config.isPremiumBot() || config.isSelfHost()) {
+            return r.hashMap("money", money).with(Versioned.FIELD, nextVersion(player));
+        }
+
+        return r.hashMap("data", r.hashMap("newMoney", money)).with(Versioned.FIELD, nextVersion(player));
+    }
+
+    private static ReqlExpr itemAmount(ReqlExpr player, String itemKey) {
+        return player.g("inventory").g(itemKey).default_(0);
+    }
+
+    // Empty stacks get removed, same as Inventory does.
+    private static Object setItemAmount(ReqlExpr player, String itemKey, ReqlExpr amount) {
+        return r.branch(amount.eq(0),
+                r.hashMap("inventory", r.hashMap(itemKey, r.literal())).with(Versioned.FIELD, nextVersion(player)),
+                r.hashMap("inventory", r.hashMap(itemKey, amount)).with(Versioned.FIELD, nextVersion(player))
+        );
+    }
+
+    // Money and items get saved as what was added or taken, not the new amount: two commands saving the same player
+    // at once (mining while fishing, for example) would otherwise undo each other's rewards.
+    private static Map<String, Long> countersOf(ManagedObject object) {
+        if (object instanceof Player) {
+            return PLAYER_COUNTERS;
+        }
+
+        return object instanceof SeasonPlayer ? SEASON_PLAYER_COUNTERS : Map.of();
+    }
+
+    private static int count(Map<?, ?> result, String key) {
+        var value = result.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static ReqlExpr versionOf(ReqlExpr row) {
+        return row.g(Versioned.FIELD).default_(0);
+    }
+
+    private static ReqlExpr nextVersion(ReqlExpr row) {
+        return versionOf(row).add(1);
+    }
+
+    // Objects loaded from rethink only send what changed since they were loaded. Returns false if the object
+    // wasn't loaded from rethink (new objects, for example), and needs to be saved whole.
+    private boolean saveChanges(ManagedObject object) {
+        var tracked = changeTracker.changes(object, countersOf(object));
+        if (tracked == null) {
+            return false;
+        }
+
+        if (tracked.isEmpty()) {
+            log("Skipping save of {} {}:{}, nothing changed", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
+            return true;
+        }
+
+        log("Saving {} {}:{} to rethink (changed: {})", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId(), tracked.changedFields());
+        ReqlExpr query;
+        if (object instanceof Versioned) {
+            // Other saves have to see this as a change too, see saveIfUnchanged.
+            query = r.table(object.getTableName())
+                    .get(object.getId())
+                    .update(row -> {
+                        var update = new HashMap<>(tracked.update(row));
+                        update.put(Versioned.FIELD, nextVersion(row));
+                        return update;
+                    });
+        } else {
+            query = r.table(object.getTableName())
+                    .get(object.getId())
+                    .update(tracked::update);
+        }
+
+        // Waits for the write even on tables nobody caches: the snapshot can only move forward once it's in.
+        Map<?, ?> result;
+        try {
+            result = run(ConnectionPool.Lane.WRITE, c -> query.runAtom(c, Map.class));
+        } catch (RuntimeException e) {
+            // We don't know what made it, so the next save has to send everything.
+            changeTracker.forget(object);
+            throw e;
+        }
+
+        if (isCached(object.getTableName())) {
+            invalidator.invalidate(object.getTableName(), object.getId());
+        }
+
+        if (count(result, "errors") > 0) {
+            changeTracker.forget(object);
+            throw new IllegalStateException("Couldn't save " + object.getTableName() + ":" + object.getId() + ": " + result.get("first_error"));
+        }
+
+        if (count(result, "skipped") > 0) {
+            // It got deleted since it was loaded, so there's nothing to update: save it whole instead.
+            changeTracker.forget(object);
+            return false;
+        }
+
+        tracked.commit();
+        return true;
+    }
+
+    private void write(ManagedObject object, ReqlAst query) {
+        write(object.getTableName(), object.getId(), query);
+    }
+
+    private void write(String table, String id, ReqlAst query) {
+        if (isCached(table)) {
+            // Wait for the write, else other nodes could re-cache the old document right after we invalidate it.
+            write(c -> query.run(c));
+            invalidator.invalidate(table, id);
+        } else {
+            write(c -> query.runNoReply(c));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readTracked(String table, String id, Class<T> type) {
+        Map<String, Object> document = read(c -> r.table(table).get(id).runAtom(c, Map.class));
+        return changeTracker.load(document, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> readTrackedAsync(String table, String id, Class<T> type) {
+        return readAsync(c -> r.table(table).get(id).runAtomAsync(c, Map.class))
+                .thenApply(document -> changeTracker.load((Map<String, Object>) document, type));
+    }
+
+    private <T> T read(Function<Connection, T> query) {
+        return run(ConnectionPool.Lane.READ, query);
+    }
+
+    private <T> T bulk(Function<Connection, T> query) {
+        return run(ConnectionPool.Lane.BULK, query);
+    }
+
+    private void write(Consumer<Connection> query) {
+        try (var lease = pool.acquire(ConnectionPool.Lane.WRITE)) {
+            query.accept(lease.connection());
+        }
+    }
+
+    private <T> T run(ConnectionPool.Lane lane, Function<Connection, T> query) {
+        try (var lease = pool.acquire(lane)) {
+            return query.apply(lease.connection());
+        }
+    }
+
+    private <T> Map<String, T> getAll(String table, Class<T> type, Collection<String> userIds, String keySuffix,
+                                      Function<T, String> userId, Function<String, T> fallback) {
+        // Dedupe, getAll would return the same document twice otherwise.
+        var ids = new LinkedHashSet<>(userIds);
+        Map<String, T> result = new LinkedHashMap<>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        var keys = new ArrayList<String>(ids.size());
+        for (var id : ids) {
+            keys.add(id + keySuffix);
+        }
+
+        List<Map> found = read(c -> r.table(table).getAll(r.args(keys)).run(c, Map.class).toList());
+        Map<String, T> byUser = new HashMap<>(found.size() * 2);
+        for (var document : found) {
+            @SuppressWarnings("unchecked")
+            var object = changeTracker.load((Map<String, Object>) document, type);
+            byUser.put(userId.apply(object), object);
+        }
+
+        for (var id : ids) {
+            var object = byUser.get(id);
+            result.put(id, object == null ? fallback.apply(id) : object);
+        }
+
+        return result;
+    }
+
+    // The lease is given back once rethink answers, not when this returns.
+    private <T> CompletableFuture<T> readAsync(Function<Connection, CompletableFuture<T>> query) {
+        var lease = pool.acquire(ConnectionPool.Lane.READ);
+        try {
+            return query.apply(lease.connection()).whenComplete((result, error) -> lease.close());
+        } catch (RuntimeException e) {
+            lease.close();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private boolean isCached(String table) {
+        return invalidator.handles(table);
+    }
+
+    private static <K, V> RemovalListener<K, V> evictionCounter(String cache) {
+        return notification -> {
+            if (notification.wasEvicted()) {
+                Metrics.DB_CACHE_EVENTS.labels(cache, "eviction").inc();
+            }
+        };
     }
 }
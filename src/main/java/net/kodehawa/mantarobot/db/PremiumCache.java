@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Caches whether an user or a guild is premium, so we don't have to look up the user/guild and its key every time
+ * we want to know that (every command, every premium-aware ratelimit).
+ * Premium entries are only valid until the key expires, so an expired key will never be reported as premium.
+ */
+public class PremiumCache {
+    // Not actual tables, only used to tell other nodes to drop an entry.
+    private static final String USER_TABLE = "premium-users";
+    private static final String GUILD_TABLE = "premium-guilds";
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    private final ManagedDatabase db;
+    private final CacheInvalidator invalidator;
+    private final Cache<String, Entitlement> users = CacheBuilder.newBuilder()
+            .maximumSize(50_000)
+            .expireAfterWrite(MAX_AGE, TimeUnit.MILLISECONDS)
+            .build();
+    private final Cache<String, Entitlement> guilds = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(MAX_AGE, TimeUnit.MILLISECONDS)
+            .build();
+
+    PremiumCache(@Nonnull ManagedDatabase db, @Nonnull CacheInvalidator invalidator) {
+        this.db = db;
+        this.invalidator = invalidator;
+
+        invalidator.register(USER_TABLE, users::invalidate);
+        invalidator.register(GUILD_TABLE, guilds::invalidate);
+    }
+
+    public boolean isUserPremium(@Nonnull String userId) {
+        return lookup(users, userId, "premium_user", id -> {
+            var user = db.getUser(id);
+            return user.isPremium() ? expirationOf(user.getData().getPremiumKey()) : 0;
+        });
+    }
+
+    public boolean isGuildPremium(@Nonnull String guildId) {
+        return lookup(guilds, guildId, "premium_guild", id -> {
+            var guild = db.getGuild(id);
+            if (!guild.isPremium()) {
+                return 0L;
+            }
+
+            // Old premium system, the guild might not even have a key.
+            return Math.max(guild.getPremiumUntil(), expirationOf(guild.getData().getPremiumKey()));
+        });
+    }
+
+    /**
+     * Drops the cached premium status of an user on every node. Call this after giving or taking a key from an user.
+     *
+     * @param userId The id of the user.
+     */
+    public void invalidateUser(@Nonnull String userId) {
+        invalidator.invalidate(USER_TABLE, userId);
+    }
+
+    /**
+     * Drops the cached premium status of a guild on every node.
+     * Saving a guild already does this, so this only needs to be called if the key changed but the guild didn't.
+     *
+     * @param guildId The id of the guild.
+     */
+    public void invalidateGuild(@Nonnull String guildId) {
+        invalidator.invalidate(GUILD_TABLE, guildId);
+    }
+
+    void dropGuild(@Nonnull String guildId) {
+        guilds.invalidate(guildId);
+    }
+
+    private static boolean lookup(Cache<String, Entitlement> cache, String id, String name, Function<String, Long> premiumUntil) {
+        var now = currentTimeMillis();
+        var entitlement = cache.getIfPresent(id);
+        if (entitlement != null && now < entitlement.validUntil) {
+            Metrics.DB_CACHE_EVENTS.labels(name, "hit").inc();
+            return entitlement.premium;
+        }
+
+        Metrics.DB_CACHE_EVENTS.labels(name, "miss").inc();
+        long until = premiumUntil.apply(id);
+        var premium = until != 0;
+        var validUntil = premium && until > now ? Math.min(until, now + MAX_AGE) : now + MAX_AGE;
+
+        cache.put(id, new Entitlement(premium, validUntil));
+        return premium;
+    }
+
+    private long expirationOf(String keyId) {
+        // No key but still premium (premium bot, for example): doesn't expire on its own.
+        var key = db.getPremiumKey(keyId);
+        return key == null ? Long.MAX_VALUE : key.getExpiration();
+    }
+
+    private static class Entitlement {
+        private final boolean premium;
+        private final long validUntil;
+
+        private Entitlement(boolean premium, long validUntil) {
+            this.premium = premium;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedObject;
+import net.kodehawa.mantarobot.db.Versioned;
 import net.kodehawa.mantarobot.db.entities.helpers.PremiumKeyData;
 import net.kodehawa.mantarobot.db.entities.helpers.UserData;
 import net.kodehawa.mantarobot.utils.APIUtils;
@@ -40,11 +41,12 @@ import java.util.concurrent.TimeUnit;
 
 import static java.lang.System.currentTimeMillis;
 
-public class DBUser implements ManagedObject {
+public class DBUser implements ManagedObject, Versioned {
     public static final String DB_TABLE = "users";
     private final UserData data;
     private final String id;
     private long premiumUntil;
+    private long version;
 
     @JsonIgnore
     private final Config config = MantaroData.config().get();
@@ -183,6 +185,7 @@ public class DBUser implements ManagedObject {
         data.getKeysClaimed().remove(Utils.getKeyByValue(data.getKeysClaimed(), originalKey));
         data.setHasReceivedFirstKey(false);
         save();
+        MantaroData.db().getPremiumCache().invalidateUser(getId());
     }
 
     public UserData getData() {
@@ -194,6 +197,16 @@ public class DBUser implements ManagedObject {
         return this.id;
     }
 
+    @Override
+    public long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @JsonIgnore
     @Override
     @Nonnull
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db.entities;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import net.kodehawa.mantarobot.core.CommandPolicy;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The part of a guild's {@link GuildData} that's needed to dispatch a command: prefix, disabled commands and
+ * the language. Fetched with a pluck, so we don't have to get (and deserialize) the whole guild on every message.
+ * This is read-only: use {@link DBGuild} to change anything.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GuildCommandConfig {
+    /**
+     * The fields of {@link GuildData} this reads. Used to build the pluck.
+     */
+    public static final List<String> DATA_FIELDS = List.of(
+            "guildCustomPrefix", "lang", "commandWarningDisplay", "whitelistedRole",
+            "disabledCommands", "disabledChannels", "disabledCategories", "disabledRoles", "disabledUsers",
+            "channelSpecificDisabledCommands", "channelSpecificDisabledCategories",
+            "roleSpecificDisabledCommands", "roleSpecificDisabledCategories"
+    );
+
+    private final String id;
+    private final String guildCustomPrefix;
+    private final String lang;
+    private final boolean commandWarningDisplay;
+    private final String whitelistedRole;
+    private final Set<String> disabledCommands;
+    private final Set<String> disabledChannels;
+    private final Set<CommandCategory> disabledCategories;
+    private final Set<String> disabledRoles;
+    private final Set<String> disabledUsers;
+    private final Map<String, List<String>> channelSpecificDisabledCommands;
+    private final Map<String, List<CommandCategory>> channelSpecificDisabledCategories;
+    private final Map<String, List<String>> roleSpecificDisabledCommands;
+    private final Map<String, List<CommandCategory>> roleSpecificDisabledCategories;
+    private final CommandPolicy policy;
+
+    @JsonCreator
+    private GuildCommandConfig(@JsonProperty("id") String id, @JsonProperty("data") GuildData data) {
+        // Jackson only fills the plucked fields, everything else keeps the GuildData defaults.
+        var guildData = data == null ? new GuildData() : data;
+        this.id = id;
+        this.guildCustomPrefix = guildData.getGuildCustomPrefix();
+        this.lang = guildData.getLang();
+        this.commandWarningDisplay = guildData.isCommandWarningDisplay();
+        this.whitelistedRole = guildData.getWhitelistedRole();
+        this.disabledCommands = copy(guildData.getDisabledCommands());
+        this.disabledChannels = copy(guildData.getDisabledChannels());
+        this.disabledCategories = copy(guildData.getDisabledCategories());
+        this.disabledRoles = copy(guildData.getDisabledRoles());
+        this.disabledUsers = copy(guildData.getDisabledUsers());
+        this.channelSpecificDisabledCommands = copy(guildData.getChannelSpecificDisabledCommands());
+        this.channelSpecificDisabledCategories = copy(guildData.getChannelSpecificDisabledCategories());
+        this.roleSpecificDisabledCommands = copy(guildData.getRoleSpecificDisabledCommands());
+        this.roleSpecificDisabledCategories = copy(guildData.getRoleSpecificDisabledCategories());
+        // Compiled once here: configs are cached until the guild changes, and so is this.
+        this.policy = CommandPolicy.compile(this);
+    }
+
+    /**
+     * Builds the view out of a full guild. Used for guilds that aren't in the database yet.
+     *
+     * @param guild The guild.
+     * @return The command config of it.
+     */
+    public static GuildCommandConfig of(@Nonnull DBGuild guild) {
+        return new GuildCommandConfig(guild.getId(), guild.getData());
+    }
+
+    // All of these get checked on every command, so they're sets instead of the lists GuildData has.
+    // Copies all the way down: of(DBGuild) passes the live GuildData, which can still change after this.
+    private static <T> Set<T> copy(Collection<T> collection) {
+        if (collection == null) {
+            return Set.of();
+        }
+
+        return collection.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static <T> Map<String, List<T>> copy(Map<String, List<T>> map) {
+        if (map == null) {
+            return Map.of();
+        }
+
+        Map<String, List<T>> copy = new HashMap<>();
+        map.forEach((key, values) -> {
+            if (key != null && values != null) {
+                copy.put(key, values.stream().filter(Objects::nonNull).collect(Collectors.toUnmodifiableList()));
+            }
+        });
+
+        return Map.copyOf(copy);
+    }
+
+    /**
+     * How big this is, for the command config cache: 1, plus every entry on its sets and maps.
+     *
+     * @return The weight of this.
+     */
+    public int weight() {
+        int weight = 1 + disabledCommands.size() + disabledChannels.size() + disabledCategories.size()
+                + disabledRoles.size() + disabledUsers.size();
+        for (var map : List.of(channelSpecificDisabledCommands, channelSpecificDisabledCategories,
+                roleSpecificDisabledCommands, roleSpecificDisabledCategories)) {
+            weight += map.size();
+            for (var values : map.values()) {
+                weight += values.size();
+            }
+        }
+
+        return weight;
+    }
+
+    @Nonnull
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public String getGuildCustomPrefix() {
+        return guildCustomPrefix;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public boolean isCommandWarningDisplay() {
+        return commandWarningDisplay;
+    }
+
+    @Nullable
+    public String getWhitelistedRole() {
+        return whitelistedRole;
+    }
+
+    public Set<String> getDisabledCommands() {
+        return disabledCommands;
+    }
+
+    public Set<String> getDisabledChannels() {
+        return disabledChannels;
+    }
+
+    public Set<CommandCategory> getDisabledCategories() {
+        return disabledCategories;
+    }
+
+    public Set<String> getDisabledRoles() {
+        return disabledRoles;
+    }
+
+    public Set<String> getDisabledUsers() {
+        return disabledUsers;
+    }
+
+    public Map<String, List<String>> getChannelSpecificDisabledCommands() {
+        return channelSpecificDisabledCommands;
+    }
+
+    public Map<String, List<CommandCategory>> getChannelSpecificDisabledCategories() {
+        return channelSpecificDisabledCategories;
+    }
+
+    public Map<String, List<String>> getRoleSpecificDisabledCommands() {
+        return roleSpecificDisabledCommands;
+    }
+
+    public Map<String, List<CommandCategory>> getRoleSpecificDisabledCategories() {
+        return roleSpecificDisabledCategories;
+    }
+
+    /**
+     * The disable rules of this guild, compiled for quick checking.
+     *
+     * @return The command policy of this guild.
+     */
+    @Nonnull
+    public CommandPolicy getPolicy() {
+        return policy;
+    }
+}
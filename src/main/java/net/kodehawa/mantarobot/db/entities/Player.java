@@ -25,6 +25,7 @@ import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedObject;
+import net.kodehawa.mantarobot.db.Versioned;
 import net.kodehawa.mantarobot.db.entities.helpers.Inventory;
 import net.kodehawa.mantarobot.db.entities.helpers.PlayerData;
 
@@ -37,7 +38,7 @@ import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.ser
 import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.unserialize;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class Player implements ManagedObject {
+public class Player implements ManagedObject, Versioned {
     private static final Config config = MantaroData.config().get();
     public static final String DB_TABLE = "players";
     @JsonProperty("data")
@@ -54,6 +55,8 @@ public class Player implements ManagedObject {
     private Long oldMoney;
     @JsonProperty("reputation")
     private Long reputation;
+    @JsonProperty("version")
+    private long version;
 
     @JsonCreator
     @ConstructorProperties({"id", "level", "money", "reputation", "inventory", "data"})
@@ -96,6 +99,16 @@ public class Player implements ManagedObject {
         return new Player(userId + ":g", 0L, 0L, 0L, new HashMap<>(), new PlayerData());
     }
 
+    /**
+     * How much experience a player needs to go past the specified level.
+     *
+     * @param level The current level.
+     * @return The experience they need to have more than to level up.
+     */
+    public static double getExperienceToLevelUp(long level) {
+        return (level * Math.log10(level) * 1000) + (50 * level / 2D);
+    }
+
     /**
      * Adds x amount of money from the player.
      *
@@ -199,6 +212,16 @@ public class Player implements ManagedObject {
         return this.id;
     }
 
+    @Override
+    public long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @JsonIgnore
     @Override
     @Nonnull
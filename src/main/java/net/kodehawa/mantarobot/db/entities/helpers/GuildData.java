@@ -901,4 +901,64 @@ public class GuildData {
     public void setLogTimezone(String logTimezone) {
         this.logTimezone = logTimezone;
     }
+
+    /**
+     * How big this is, for the guild caches: 1, plus every entry on its lists and maps (and the lists inside of those).
+     * Most guilds only have a few, but some have thousands of muted users, warn counts or local experience entries.
+     * Any new list or map should be added here.
+     *
+     * @return The weight of this.
+     */
+    public int weight() {
+        int weight = 1;
+        weight += entries(disabledCategories);
+        weight += entries(disabledChannels);
+        weight += entries(disabledCommands);
+        weight += entries(disabledRoles);
+        weight += entries(disabledUsers);
+        weight += entries(guildUnsafeChannels);
+        weight += entries(linkProtectionAllowedChannels);
+        weight += entries(logExcludedChannels);
+        weight += entries(modlogBlacklistedPeople);
+        weight += entries(rolesBlockedFromCommands);
+        weight += entries(slowModeChannels);
+        weight += entries(spamModeChannels);
+        weight += entries(blackListedImageTags);
+        weight += entries(localPlayerExperience);
+        weight += entries(linkProtectionAllowedUsers);
+        weight += entries(extraJoinMessages);
+        weight += entries(extraLeaveMessages);
+        weight += entries(modLogBlacklistWords);
+        weight += entries(birthdayBlockedIds);
+        weight += entries(allowedBirthdays);
+        weight += entries(autoroles);
+        weight += entries(channelSpecificDisabledCategories);
+        weight += entries(channelSpecificDisabledCommands);
+        weight += entries(mutedTimelyUsers);
+        weight += entries(warnActions);
+        weight += entries(warnCount);
+        weight += entries(roleSpecificDisabledCategories);
+        weight += entries(roleSpecificDisabledCommands);
+        weight += entries(autoroleCategories);
+        return weight;
+    }
+
+    private static int entries(Collection<?> collection) {
+        return collection == null ? 0 : collection.size();
+    }
+
+    private static int entries(Map<?, ?> map) {
+        if (map == null) {
+            return 0;
+        }
+
+        int entries = map.size();
+        for (var value : map.values()) {
+            if (value instanceof Collection) {
+                entries += ((Collection<?>) value).size();
+            }
+        }
+
+        return entries;
+    }
 }
@@ -16,12 +16,15 @@
 
 package net.kodehawa.mantarobot.utils;
 
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 public class Lazy<T> implements Supplier<T> {
     private final Supplier<T> supplier;
-    private T value;
-    private boolean set;
+    // The supplier might block, which is fine with a lock but not with a monitor on virtual threads.
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile T value;
+    private volatile boolean set;
 
     public Lazy(Supplier<T> supplier) {
         this.supplier = supplier;
@@ -31,12 +34,15 @@ public class Lazy<T> implements Supplier<T> {
         if (set) {
             return value;
         }
-        synchronized (this) {
+        lock.lock();
+        try {
             if (set) return value;
             T v = supplier.get();
             value = v;
             set = true;
             return v;
+        } finally {
+            lock.unlock();
         }
     }
 }
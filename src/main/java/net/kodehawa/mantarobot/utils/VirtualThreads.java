@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016-2021 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories for the work that spends most of its time blocked on I/O (commands, listeners, games).
+ * When {@code useVirtualThreads} is enabled in the config and the JDK has them (21+), those threads are virtual.
+ * We build for an older JDK, so they're looked up with reflection: everywhere else this falls back to platform threads.
+ */
+public class VirtualThreads {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final boolean SUPPORTED = newVirtualBuilder() != null;
+
+    /**
+     * Whether the JDK we're running on has virtual threads.
+     *
+     * @return True if virtual threads can be made.
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Whether virtual threads are enabled and supported.
+     *
+     * @return True if {@link #factory(String)} makes virtual threads.
+     */
+    public static boolean isEnabled() {
+        return MantaroData.config().get().isUseVirtualThreads() && isSupported();
+    }
+
+    /**
+     * Makes a thread factory for blocking work. Virtual if enabled, regular threads otherwise.
+     *
+     * @param nameFormat The name format of the threads, with a %d for the thread number.
+     * @return The thread factory.
+     */
+    public static ThreadFactory factory(String nameFormat) {
+        if (isEnabled()) {
+            try {
+                var builder = Class.forName("java.lang.Thread$Builder");
+                // Thread.Builder#name(String prefix, long start): names them prefix0, prefix1...
+                // Builders are mutable, so every factory gets its own.
+                var named = builder.getMethod("name", String.class, long.class)
+                        .invoke(newVirtualBuilder(), nameFormat.replace("%d", ""), 0L);
+                return (ThreadFactory) builder.getMethod("factory").invoke(named);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Couldn't make a virtual thread factory for {}, using platform threads", nameFormat, e);
+            }
+        }
+
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).build();
+    }
+
+    // Thread.ofVirtual(), or null if there's no such thing (or it's a preview feature that isn't enabled).
+    private static Object newVirtualBuilder() {
+        try {
+            return Thread.class.getMethod("ofVirtual").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
@@ -16,11 +16,18 @@
 
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisNoScriptException;
 
 import java.io.IOException;
@@ -28,14 +35,34 @@ import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * A ratelimiter backed by redis, so it's the same for every node, which makes the cooldown longer the more someone spams.
+ *
+ * <p>Once a key is on cooldown we remember until when, so attempts during it are answered here without going to redis.
+ * Those attempts still count as spam: they're sent to redis in batches (pipelined, once a second), so the cooldown increase
+ * works the same, just a little later. Redis is only asked again on the first attempt after the cooldown we know of is over.
+ */
 public class IncreasingRateLimiter {
+    private static final Logger log = LoggerFactory.getLogger(IncreasingRateLimiter.class);
     private static final String SCRIPT;
+    private static final long FLUSH_DELAY_MILLIS = 1_000;
+    private static final int MAX_BLOCKED_KEYS = 100_000;
+    private static final ScheduledExecutorService flusher = Executors.newScheduledThreadPool(1,
+            new ThreadFactoryBuilder().setNameFormat("RateLimit-Flush-%d").setDaemon(true).build()
+    );
 
     static {
+        Metrics.THREAD_POOL_COLLECTOR.add("ratelimit-flush", flusher);
+
         try {
             // We actually ratelimit using a lua script :p
             SCRIPT = IOUtils.toString(
@@ -53,10 +80,17 @@ public class IncreasingRateLimiter {
     private final int spamBeforeCooldownIncrease;
     private final int cooldownIncrease;
     private final int maxCooldown;
-    private String scriptSha;
+    private volatile String scriptSha;
     private final boolean randomIncrement;
     private final boolean premiumAware;
     private final int incrementDivider;
+    // Keys we know are on cooldown, and until when. Only an optimization: losing one just means asking redis.
+    private final Cache<String, Blocked> blocked;
+    // Attempts answered locally that redis doesn't know about yet.
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // The last cooldown notice sent to a key: until when, and how bad the spam warning on it was.
+    private final Cache<String, Notice> notices;
 
     private IncreasingRateLimiter(JedisPool pool, String prefix, int limit, int cooldown,
                                   int spamBeforeCooldownIncrease, int cooldownIncrease, int maxCooldown,
@@ -71,51 +105,83 @@ public class IncreasingRateLimiter {
         this.randomIncrement = randomIncrement;
         this.premiumAware = premiumAware;
         this.incrementDivider = incrementDivider;
+        // A cooldown can't go past the max one, so entries older than that are over anyway.
+        this.blocked = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(cooldown, maxCooldown), TimeUnit.MILLISECONDS)
+                .maximumSize(MAX_BLOCKED_KEYS)
+                .build();
+        this.notices = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(cooldown, maxCooldown), TimeUnit.MILLISECONDS)
+                .maximumSize(MAX_BLOCKED_KEYS)
+                .build();
     }
 
     @SuppressWarnings("unchecked")
-    private RateLimit limit0(String key) {
+    private RateLimit limit0(String key, boolean premiumAwareness) {
         try (Jedis j = pool.getResource()) {
-            if (scriptSha == null) {
-                scriptSha = j.scriptLoad(SCRIPT);
-            }
-
             long start = Instant.now().toEpochMilli();
             List<Long> result;
-            boolean premiumAwareness = premiumAware && MantaroData.db().getUser(key).isPremium();
             try {
-                int cd = cooldown + (randomIncrement && !premiumAwareness ? ThreadLocalRandom.current().nextInt(cooldown / incrementDivider) : 0);
-                result = (List<Long>) j.evalsha(scriptSha,
-                        Collections.singletonList(key),
-                        Arrays.asList(
-                                String.valueOf(limit),
-                                String.valueOf(start),
-                                String.valueOf(premiumAwareness ? cd - ThreadLocalRandom.current().nextInt(cooldown / 4) : cd),
-                                String.valueOf(spamBeforeCooldownIncrease),
-                                String.valueOf(cooldownIncrease),
-                                String.valueOf(maxCooldown)
-                        )
-                );
+                result = (List<Long>) j.evalsha(scriptSha(j), Collections.singletonList(key), arguments(start, premiumAwareness));
             } catch (JedisNoScriptException e) {
                 //script not in cache. force load it and try again.
                 scriptSha = j.scriptLoad(SCRIPT);
-                return limit0(key);
+                return limit0(key, premiumAwareness);
             }
 
-            return new RateLimit(
-                    start,
-                    (int) (limit - result.get(0)),
-                    result.get(1) - start,
-                    result.get(2).intValue()
-            );
+            return remember(key, start, result);
         }
     }
 
     public RateLimit limit(String key) {
-        return limit0(prefix + key);
+        boolean premiumAwareness = premiumAware && MantaroData.db().getPremiumCache().isUserPremium(key);
+        var fullKey = prefix + key;
+
+        var known = blocked.getIfPresent(fullKey);
+        var now = System.currentTimeMillis();
+        if (known != null && known.resetAt > now) {
+            // Counted inside compute, so it can't land on an entry flush() already took.
+            var attempts = pending.compute(fullKey, (k, current) -> current == null
+                    ? new Pending(premiumAwareness, new long[] { now })
+                    : current.with(now)
+            ).attempts.length;
+            scheduleFlush();
+            return new RateLimit(now, known.triesLeft, known.resetAt - now, known.spamAttempts + attempts);
+        }
+
+        return limit0(fullKey, premiumAwareness);
+    }
+
+    /**
+     * Whether the cooldown notice should be sent to a key that just got ratelimited.
+     * It's sent once per cooldown, and again only if it'd say something new (a worse spam warning).
+     *
+     * @param key       The key that got ratelimited, same as for {@link #limit(String)}.
+     * @param spamLevel How bad the spam warning on the notice would be.
+     * @return True if the notice should be sent. If so, it's counted as sent.
+     */
+    boolean claimNotice(String key, int spamLevel) {
+        var now = System.currentTimeMillis();
+        var claimed = new boolean[1];
+        notices.asMap().compute(prefix + key, (k, previous) -> {
+            if (previous != null && previous.until > now && previous.spamLevel >= spamLevel) {
+                return previous;
+            }
+
+            claimed[0] = true;
+            var known = blocked.getIfPresent(k);
+            return new Notice(known == null ? now + cooldown : known.resetAt, spamLevel);
+        });
+
+        return claimed[0];
     }
 
     public long getRemaniningCooldown(User user) {
+        var known = blocked.getIfPresent(prefix + user.getId());
+        if (known != null && known.resetAt > System.currentTimeMillis()) {
+            return known.resetAt - System.currentTimeMillis();
+        }
+
         try (Jedis j = pool.getResource()) {
             String resetAt = j.hget(prefix + user.getId(), "reset");
             if (resetAt == null) {
@@ -126,6 +192,133 @@ public class IncreasingRateLimiter {
         }
     }
 
+    private String scriptSha(Jedis j) {
+        var sha = scriptSha;
+        if (sha == null) {
+            scriptSha = sha = j.scriptLoad(SCRIPT);
+        }
+
+        return sha;
+    }
+
+    private List<String> arguments(long now, boolean premiumAwareness) {
+        int cd = cooldown + (randomIncrement && !premiumAwareness ? ThreadLocalRandom.current().nextInt(cooldown / incrementDivider) : 0);
+        return Arrays.asList(
+                String.valueOf(limit),
+                String.valueOf(now),
+                String.valueOf(premiumAwareness ? cd - ThreadLocalRandom.current().nextInt(cooldown / 4) : cd),
+                String.valueOf(spamBeforeCooldownIncrease),
+                String.valueOf(cooldownIncrease),
+                String.valueOf(maxCooldown)
+        );
+    }
+
+    private RateLimit remember(String key, long now, List<Long> result) {
+        var rateLimit = new RateLimit(
+                now,
+                (int) (limit - result.get(0)),
+                result.get(1) - now,
+                result.get(2).intValue()
+        );
+
+        if (rateLimit.getTriesLeft() < 1) {
+            blocked.put(key, new Blocked(result.get(1), rateLimit.getTriesLeft(), rateLimit.getSpamAttempts()));
+        } else {
+            blocked.invalidate(key);
+        }
+
+        return rateLimit;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Sends the attempts we answered locally to redis, all in one pipeline, and takes the new cooldowns from what it says.
+    @SuppressWarnings("unchecked")
+    private void flush() {
+        flushScheduled.set(false);
+        var batch = new HashMap<String, Pending>();
+        for (var key : pending.keySet()) {
+            pending.computeIfPresent(key, (k, drained) -> {
+                batch.put(k, drained);
+                return null;
+            });
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try (Jedis j = pool.getResource()) {
+            var sha = scriptSha(j);
+            var now = System.currentTimeMillis();
+            var pipeline = j.pipelined();
+            var responses = new HashMap<String, Response<Object>>();
+            batch.forEach((key, entry) -> {
+                Response<Object> last = null;
+                // Each one at the time it was made: at the time of the flush, the cooldown could be over already,
+                // and the script would take them as new uses (starting a new cooldown) instead of spam.
+                for (var attemptedAt : entry.attempts) {
+                    last = pipeline.evalsha(sha, Collections.singletonList(key), arguments(attemptedAt, entry.premium));
+                }
+
+                responses.put(key, last);
+            });
+
+            pipeline.sync();
+            responses.forEach((key, response) -> remember(key, now, (List<Long>) response.get()));
+        } catch (JedisNoScriptException e) {
+            // Redis got restarted or flushed: the next one to go to redis loads it again.
+            scriptSha = null;
+            log.debug("Ratelimit script was gone when flushing {}, dropped {} keys", prefix, batch.size());
+        } catch (Exception e) {
+            // Only some spam that doesn't make the cooldown longer: not worth retrying.
+            log.warn("Couldn't send ratelimit attempts to redis for {}", prefix, e);
+        }
+    }
+
+    private static class Blocked {
+        private final long resetAt;
+        private final int triesLeft;
+        private final int spamAttempts;
+
+        private Blocked(long resetAt, int triesLeft, int spamAttempts) {
+            this.resetAt = resetAt;
+            this.triesLeft = triesLeft;
+            this.spamAttempts = spamAttempts;
+        }
+    }
+
+    private static class Notice {
+        private final long until;
+        private final int spamLevel;
+
+        private Notice(long until, int spamLevel) {
+            this.until = until;
+            this.spamLevel = spamLevel;
+        }
+    }
+
+    private static class Pending {
+        private final boolean premium;
+        // When each attempt was made.
+        private final long[] attempts;
+
+        private Pending(boolean premium, long[] attempts) {
+            this.premium = premium;
+            this.attempts = attempts;
+        }
+
+        private Pending with(long attemptedAt) {
+            var updated = Arrays.copyOf(attempts, attempts.length + 1);
+            updated[attempts.length] = attemptedAt;
+            return new Pending(premium, updated);
+        }
+    }
+
     public static class Builder {
         private JedisPool pool;
         private String prefix = "";
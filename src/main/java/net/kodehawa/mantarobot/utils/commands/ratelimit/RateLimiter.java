@@ -16,16 +16,14 @@
 
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class defines the x ratelimit that will be taken into account when x user inputs a command.
@@ -35,20 +33,21 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <p>
  * This class normally does the work of making abusable commands not-so abusable, like ~>loot. Also sorts daily or timely timeouts for other commands like daily and rep.
  * <p>
+ * Every key only keeps a timestamp: when its bucket is empty again (a GCRA, basically a token bucket).
+ * Each use pushes it forward by timeout / max, and a use is allowed as long as that doesn't go further than timeout from now.
+ * Keys go away on their own once they're not limited anymore, so nothing has to be scheduled to lift a ratelimit.
+ * <p>
  * Made by natanbc, modified by Kodehawa.
  *
  * @since 01-06-2017
  */
 public class RateLimiter {
-    private static final ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
-
-    static {
-        Metrics.THREAD_POOL_COLLECTOR.add("rate-limiter", ses);
-    }
+    // Only a cap so a flood of new keys can't take all the memory: keys expire way before we get here normally.
+    private static final int MAX_KEYS = 250_000;
 
     private final long max;
     private final long timeout;
-    private final ConcurrentHashMap<String, Pair<AtomicInteger, Long>> usersRateLimited = new ConcurrentHashMap<>();
+    private final Cache<String, AtomicLong> usersRateLimited;
     private boolean isPremiumAware = false;
 
     /**
@@ -57,8 +56,7 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout) {
-        this.max = 1;
-        this.timeout = timeUnit.toMillis(timeout);
+        this(timeUnit, 1, timeout);
     }
 
     /**
@@ -68,9 +66,8 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout, boolean isPremiumAware) {
-        this.max = 1;
+        this(timeUnit, 1, timeout);
         this.isPremiumAware = isPremiumAware;
-        this.timeout = timeUnit.toMillis(timeout);
     }
 
     /**
@@ -81,42 +78,42 @@ public class RateLimiter {
     public RateLimiter(TimeUnit timeUnit, int max, int timeout) {
         this.max = max;
         this.timeout = timeUnit.toMillis(timeout);
+        // A key is never limited for longer than timeout after it was last used, so past that it's the same as not having it.
+        this.usersRateLimited = CacheBuilder.newBuilder()
+                .expireAfterAccess(this.timeout, TimeUnit.MILLISECONDS)
+                .maximumSize(MAX_KEYS)
+                .build();
     }
 
     //Basically where you get b1nzy'd.
     public boolean process(String key) {
-        boolean isPremium = isPremiumAware && MantaroData.db().getUser(key).isPremium();
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-
-        // Put the user on the RL map if they aren't here already, but we already let them pass.
-        if (p == null) {
-            usersRateLimited.put(key, p = new Pair<>());
-            p.first = new AtomicInteger();
+        var timeout = timeoutFor(key);
+        var interval = timeout / max;
+        var emptyAt = usersRateLimited.asMap().computeIfAbsent(key, k -> new AtomicLong());
+
+        while (true) {
+            var now = System.currentTimeMillis();
+            var current = emptyAt.get();
+            var next = Math.max(current, now) + interval;
+            if (next - now > timeout) {
+                return false;
+            }
+
+            if (emptyAt.compareAndSet(current, next)) {
+                return true;
+            }
         }
-
-        AtomicInteger a = p.first;
-        long i = a.get();
-        if (i >= max) return false;
-
-        a.incrementAndGet();
-        long now = System.currentTimeMillis();
-
-        Long tryAgain = p.second;
-        if (tryAgain == null || tryAgain < now) {
-            p.second = now + (isPremium ? (long) (timeout * 0.75) : timeout);
-        }
-
-        ses.schedule(a::decrementAndGet, isPremium ? (long) (timeout * 0.75) : timeout, TimeUnit.MILLISECONDS);
-        return true;
     }
 
     //Method overload.
     public long tryAgainIn(String key) {
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-        if (p == null || p.second == null)
+        var emptyAt = usersRateLimited.getIfPresent(key);
+        if (emptyAt == null)
             return 0;
 
-        return Math.max(p.second - System.currentTimeMillis(), 0);
+        // The next use is allowed once there's room for one more interval within the timeout.
+        var timeout = timeoutFor(key);
+        return Math.max(emptyAt.get() + timeout / max - timeout - System.currentTimeMillis(), 0);
     }
 
     public long tryAgainIn(Member key) {
@@ -135,12 +132,8 @@ public class RateLimiter {
         return process(member.getUser());
     }
 
-    public ConcurrentHashMap<String, Pair<AtomicInteger, Long>> getUsersRateLimited() {
-        return this.usersRateLimited;
-    }
-
-    private static class Pair<F, S> {
-        F first;
-        S second;
+    private long timeoutFor(String key) {
+        var isPremium = isPremiumAware && MantaroData.db().getPremiumCache().isUserPremium(key);
+        return isPremium ? (long) (timeout * 0.75) : timeout;
     }
 }
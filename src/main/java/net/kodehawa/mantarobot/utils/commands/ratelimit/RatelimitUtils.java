@@ -16,6 +16,8 @@
 
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
@@ -29,16 +31,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class RatelimitUtils {
     private static final Logger log = LoggerFactory.getLogger(RatelimitUtils.class);
 
     public static final Map<Long, AtomicInteger> ratelimitedUsers = new ConcurrentHashMap<>();
-    private static final Set<String> loggedSpambotUsers = ConcurrentHashMap.newKeySet();
-    private static final Set<String> loggedAttemptUsers = ConcurrentHashMap.newKeySet();
+    // Who we already logged as a spambot. Forgotten after a day, same as ratelimitedUsers, so they get logged again if they keep at it.
+    private static final Cache<String, Boolean> loggedSpambotUsers = CacheBuilder.newBuilder()
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .maximumSize(50_000)
+            .build();
+    private static final Cache<String, Boolean> loggedAttemptUsers = CacheBuilder.newBuilder()
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .maximumSize(50_000)
+            .build();
     private static final Config config = MantaroData.config().get();
 
     private static boolean ratelimit(IncreasingRateLimiter rateLimiter, String u, GuildMessageReceivedEvent event,
@@ -54,48 +64,56 @@ public class RatelimitUtils {
 
         RateLimit rateLimit = rateLimiter.limit(u);
         if (rateLimit.getTriesLeft() < 1) {
-            event.getChannel().sendMessage(
-                    String.format(i18nContext.get("general.ratelimit.header"),
-                            EmoteReference.STOPWATCH, i18nContext.get("general.ratelimit_quotes"),
-                            Utils.formatDuration(rateLimit.getCooldown()))
-                            + (extraMessage == null ? "" : "\n " + extraMessage)
-                            + ((rateLimit.getSpamAttempts() > 2 && spamAware) ?
-                            "\n\n" + EmoteReference.STOP + i18nContext.get("general.ratelimit.spam_1") : "")
-                            + ((rateLimit.getSpamAttempts() > 4 && spamAware) ?
-                            i18nContext.get("general.ratelimit.spam_2") : "")
-                            + ((rateLimit.getSpamAttempts() > 10 && spamAware) ?
-                            i18nContext.get("general.ratelimit.spam_3") : "")
-                            + ((rateLimit.getSpamAttempts() > 15 && spamAware) ?
-                            i18nContext.get("general.ratelimit.spam_4") : "")
-            ).queue();
+            // Only tell them once per cooldown, unless the spam warning got worse: spamming more doesn't get them more messages.
+            if (rateLimiter.claimNotice(u, spamLevel(rateLimit, spamAware))) {
+                event.getChannel().sendMessage(
+                        String.format(i18nContext.get("general.ratelimit.header"),
+                                EmoteReference.STOPWATCH, i18nContext.get("general.ratelimit_quotes"),
+                                Utils.formatDuration(rateLimit.getCooldown()))
+                                + (extraMessage == null ? "" : "\n " + extraMessage)
+                                + ((rateLimit.getSpamAttempts() > 2 && spamAware) ?
+                                "\n\n" + EmoteReference.STOP + i18nContext.get("general.ratelimit.spam_1") : "")
+                                + ((rateLimit.getSpamAttempts() > 4 && spamAware) ?
+                                i18nContext.get("general.ratelimit.spam_2") : "")
+                                + ((rateLimit.getSpamAttempts() > 10 && spamAware) ?
+                                i18nContext.get("general.ratelimit.spam_3") : "")
+                                + ((rateLimit.getSpamAttempts() > 15 && spamAware) ?
+                                i18nContext.get("general.ratelimit.spam_4") : "")
+                ).queue();
+            }
 
             // Assuming it's an user RL if it can parse a long since we use UUIDs for other RLs.
+            long userId;
             try {
-                //noinspection ResultOfMethodCallIgnored
-                Long.parseUnsignedLong(u);
-                User user;
-
-                try {
-                    var member = event.getGuild().retrieveMemberById(u, false).complete();
-                    user = member.getUser();
-                } catch (Exception e) {
-                    log.error("Got a exception while trying to fetch a user that was just spamming?", e);
-                    return false;
-                }
-
-                var guildId = event.getGuild().getId();
-                var channelId = event.getChannel().getId();
-                var messageId = event.getMessage().getId();
+                userId = Long.parseUnsignedLong(u);
+            } catch (NumberFormatException e) {
+                return false;
+            }
 
+            var guildId = event.getGuild().getId();
+            var channelId = event.getChannel().getId();
+            var messageId = event.getMessage().getId();
+            Consumer<User> track = user -> {
                 // If they go over 60 in one attempt, flag.
-                if (rateLimit.getSpamAttempts() > 60 && spamAware && !loggedAttemptUsers.contains(user.getId())) {
-                    loggedAttemptUsers.add(user.getId());
+                if (rateLimit.getSpamAttempts() > 60 && spamAware && loggedAttemptUsers.asMap().putIfAbsent(user.getId(), true) == null) {
                     LogUtils.spambot(user, guildId, channelId, messageId, LogUtils.SpamType.OVER_SPAM_LIMIT);
                 }
 
                 onRateLimit(user, guildId, channelId, messageId);
-            } catch (Exception e) {
-                return false;
+            };
+
+            // It's almost always whoever sent the message. Never block here: this is exactly when someone is spamming.
+            if (event.getAuthor().getIdLong() == userId) {
+                track.accept(event.getAuthor());
+            } else {
+                var member = event.getGuild().getMemberById(userId);
+                if (member != null) {
+                    track.accept(member.getUser());
+                } else {
+                    event.getJDA().retrieveUserById(userId).queue(track, error ->
+                            log.error("Got a exception while trying to fetch a user that was just spamming?", error)
+                    );
+                }
             }
 
             return false;
@@ -104,6 +122,16 @@ public class RatelimitUtils {
         return true;
     }
 
+    // Which of the spam warnings the message would have, so a worse one is still sent within the same cooldown.
+    private static int spamLevel(RateLimit rateLimit, boolean spamAware) {
+        if (!spamAware) {
+            return 0;
+        }
+
+        var attempts = rateLimit.getSpamAttempts();
+        return attempts > 15 ? 4 : attempts > 10 ? 3 : attempts > 4 ? 2 : attempts > 2 ? 1 : 0;
+    }
+
     // Overloads
     public static boolean ratelimit(IncreasingRateLimiter rateLimiter, Context ctx) {
         return ratelimit(rateLimiter, ctx.getAuthor().getId(), ctx.getEvent(), ctx.getLanguageContext(), null, false);
@@ -140,8 +168,7 @@ public class RatelimitUtils {
         var ratelimitedTimes = ratelimitedUsers.computeIfAbsent(user.getIdLong(), __ -> new AtomicInteger()).incrementAndGet();
 
         // Remember to update this if you make a command that has rls
-        if (ratelimitedTimes > 1750 && !loggedSpambotUsers.contains(user.getId())) {
-            loggedSpambotUsers.add(user.getId());
+        if (ratelimitedTimes > 1750 && loggedSpambotUsers.asMap().putIfAbsent(user.getId(), true) == null) {
             LogUtils.spambot(user, guildId, channelId, messageId, LogUtils.SpamType.BLATANT);
         }
     }
@@ -84,4 +84,25 @@ public class Metrics {
             .name("patrons")
             .help("New patrons")
             .register();
+    public static final Counter DB_CACHE_EVENTS = Counter.build()
+            .name("db_cache_events")
+            .help("Database cache events (hit/miss/eviction)")
+            .labelNames("cache", "type")
+            .register();
+    public static final Histogram EXECUTOR_QUEUE_WAIT = Histogram.build()
+            .name("executor_queue_wait")
+            .help("Time tasks spend queued before they start running, in milliseconds")
+            .labelNames("executor")
+            .buckets(1, 5, 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000)
+            .register();
+    public static final Counter EXECUTOR_REJECTIONS = Counter.build()
+            .name("executor_rejections")
+            .help("Tasks not queued because the executor was overloaded, by reason")
+            .labelNames("executor", "reason")
+            .register();
+    public static final Counter DB_VERSION_CONFLICTS = Counter.build()
+            .name("db_version_conflicts")
+            .help("Saves that failed because someone else wrote to the object first, by table")
+            .labelNames("table")
+            .register();
 }
@@ -59,7 +59,7 @@ public class ThreadPoolCollector extends Collector {
 
     @Override
     public List<MetricFamilySamples> collect() {
-        List<MetricFamilySamples> list = new ArrayList<>(8);
+        List<MetricFamilySamples> list = new ArrayList<>(9);
         GaugeMetricFamily activeCount = new GaugeMetricFamily(
                 "executor_active_count",
                 "Approximate number of threads that are actively executing tasks.",
@@ -116,6 +116,13 @@ public class ThreadPoolCollector extends Collector {
         );
 
         list.add(taskCount);
+        GaugeMetricFamily queueSize = new GaugeMetricFamily(
+                "executor_queue_size",
+                "Approximate number of tasks waiting to be executed.",
+                Collections.singletonList("executor")
+        );
+
+        list.add(queueSize);
         for (var entry : executors.entrySet()) {
             var name = Collections.singletonList(entry.getKey());
             var executor = entry.getValue();
@@ -128,6 +135,7 @@ public class ThreadPoolCollector extends Collector {
             maximumPoolSize.addMetric(name, executor.getMaximumPoolSize());
             poolSize.addMetric(name, executor.getPoolSize());
             taskCount.addMetric(name, executor.getTaskCount());
+            queueSize.addMetric(name, executor.getQueue().size());
         }
 
         return list;
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.commands.custom.v3.CCv3;
+import net.kodehawa.mantarobot.commands.custom.v3.Parser;
+import net.kodehawa.mantarobot.commands.custom.v3.ast.Node;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterContext;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterVisitor;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.StepLimitException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CCv3CompilerTest {
+    private static final Map<String, String> VARS = Map.of(
+            "name", "Bob",
+            "empty", "",
+            "cmp", "equals",
+            "negated", "not-equals",
+            "predicate", "is-empty",
+            "op", "upper"
+    );
+
+    @Test
+    public void testConstantConditions() {
+        assertSameResult("@{if;a;equals;a;yes;no}");
+        assertSameResult("@{if;a;not-equals;a;yes;no}");
+        assertSameResult("@{if;;is-empty;yes;no}");
+        assertSameResult("@{if;a;true;b}");
+        assertSameResult("@{if;a;false;b;c}");
+        assertSameResult("@{if;a;nope;b;c}");
+        assertSameResult("@{if;a;equals}");
+        assertSameResult("@{compare;abc;starts-with;ab}");
+        assertSameResult("@{compare;abc;nope;ab}");
+        assertSameResult("@{compare;abc}");
+        assertSameResult("@{test;usermention;<@1234>}");
+        assertSameResult("@{test;nope;x}");
+        assertSameResult("@{test;is-empty}");
+        assertSameResult("@{and;true;@{not;false}} @{or;false;maybe}");
+        assertSameResult("@{replace;a;b;banana;cat} @{lower;ABC;Def}");
+    }
+
+    @Test
+    public void testConditionsOnVariables() {
+        assertSameResult("@{if;$(name);equals;Bob;hi $(name);who?}");
+        assertSameResult("@{if;$(empty);is-empty;nothing;something}");
+        assertSameResult("@{compare;$(name);ignorecase-equals;bob}");
+        assertSameResult("@{test;is-not-empty;$(name)}");
+    }
+
+    @Test
+    public void testComparatorFromVariable() {
+        // The comparator (or predicate) isn't known until it runs, so it can't be bound when compiling.
+        assertSameResult("@{if;Bob;$(cmp);$(name);yes;no}");
+        assertSameResult("@{if;Bob;$(negated);$(name);yes;no}");
+        assertSameResult("@{if;;$(predicate);yes;no}");
+        assertSameResult("@{compare;Bob;$(cmp);$(name)}");
+        assertSameResult("@{compare;Bob;$(missing);$(name)}");
+        assertSameResult("@{test;$(predicate);$(empty)}");
+    }
+
+    @Test
+    public void testUnknownOperations() {
+        assertSameResult("@{nope;a;b}");
+        assertSameResult("@{$(op);abc}");
+        assertSameResult("@{$(name);abc}");
+        assertSameResult("$(missing) @{if;a;equals;a;@{nope}}");
+    }
+
+    @Test
+    public void testSetChangesLaterVariables() {
+        assertSameResult("$(name) @{set;name;Alice}$(name)");
+    }
+
+    @Test
+    public void testStepLimit() {
+        var program = CCv3.compile(parse("$(name)".repeat(10_001)));
+        Assertions.assertThrows(StepLimitException.class, () -> program.run(context()));
+
+        var underLimit = CCv3.compile(parse("$(name)".repeat(10_000)));
+        Assertions.assertEquals("Bob".repeat(10_000), underLimit.run(context()));
+    }
+
+    @Test
+    public void testFoldedConditionsDontCountAsSteps() {
+        // Worked out when compiling, so these never run: no steps, no matter how many there are.
+        var program = CCv3.compile(parse("@{if;a;equals;a;x;y}".repeat(10_001)));
+        Assertions.assertEquals("x".repeat(10_001), program.run(context()));
+    }
+
+    private static void assertSameResult(String source) {
+        var ast = parse(source);
+        var interpreted = ast.accept(new InterpreterVisitor(), context());
+        var compiled = CCv3.compile(ast).run(context());
+        Assertions.assertEquals(interpreted, compiled, source);
+    }
+
+    private static Node parse(String source) {
+        return new Parser(source).parse();
+    }
+
+    private static InterpreterContext context() {
+        return new InterpreterContext(new HashMap<>(VARS), CCv3.operations(), null);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import com.google.common.cache.CacheBuilder;
+import net.kodehawa.mantarobot.db.GuardedCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GuardedCacheTest {
+    @Test
+    public void testCachesLoadedValue() {
+        GuardedCache<String> cache = new GuardedCache<>(CacheBuilder.newBuilder().build());
+        AtomicInteger loads = new AtomicInteger();
+
+        Assertions.assertEquals("v1", cache.load("guild", key -> "v" + loads.incrementAndGet()));
+        Assertions.assertEquals("v1", cache.getIfPresent("guild"));
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testInvalidationDuringLoad() {
+        GuardedCache<String> cache = new GuardedCache<>(CacheBuilder.newBuilder().build());
+
+        // The load reads the old value, then a save lands and invalidates the key before the load puts it.
+        String loaded = cache.load("guild", key -> {
+            cache.invalidate(key);
+            return "old";
+        });
+
+        Assertions.assertEquals("old", loaded);
+        Assertions.assertNull(cache.getIfPresent("guild"));
+
+        // The next load isn't racing with anything, so that one gets cached.
+        Assertions.assertEquals("new", cache.load("guild", key -> "new"));
+        Assertions.assertEquals("new", cache.getIfPresent("guild"));
+    }
+
+    @Test
+    public void testInvalidationAfterLoad() {
+        GuardedCache<String> cache = new GuardedCache<>(CacheBuilder.newBuilder().build());
+        cache.load("guild", key -> "old");
+        cache.invalidate("guild");
+
+        Assertions.assertNull(cache.getIfPresent("guild"));
+    }
+}